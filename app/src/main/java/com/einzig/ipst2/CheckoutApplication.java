@@ -30,9 +30,11 @@ import org.solovyev.android.checkout.PlayStoreListener;
 
 import android.app.Activity;
 import android.app.Application;
+import android.os.AsyncTask;
 import android.widget.Toast;
 
 import com.einzig.ipst2.billing.Encryption;
+import com.einzig.ipst2.database.DatabaseManager;
 
 import javax.annotation.Nonnull;
 
@@ -63,6 +65,14 @@ public class CheckoutApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        // Hold the shared database connection for as long as the app is alive. Opening it can run
+        // a long upgrade, so it's opened in the background rather than before the first activity
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                DatabaseManager.getInstance(CheckoutApplication.this).openDatabase();
+            }
+        });
         mBilling.addPlayStoreListener(new PlayStoreListener() {
             @Override
             public void onPurchasesChanged() {
@@ -71,6 +81,12 @@ public class CheckoutApplication extends Application {
         });
     }
 
+    @Override
+    public void onTerminate() {
+        DatabaseManager.getInstance(this).closeDatabase();
+        super.onTerminate();
+    }
+
     @Nonnull
     public Billing getBilling() {
         return mBilling;
@@ -57,9 +57,12 @@ import android.widget.Toast;
 import com.crashlytics.android.Crashlytics;
 import com.einzig.ipst2.R;
 import com.einzig.ipst2.database.DatabaseInterface;
-import com.einzig.ipst2.parse.AuthenticatorTask;
+import com.einzig.ipst2.database.PortalSummary;
+import com.einzig.ipst2.database.SummaryGrabber;
 import com.einzig.ipst2.parse.EmailParseTask;
 import com.einzig.ipst2.parse.GetMailTask;
+import com.einzig.ipst2.parse.HistoryBackfill;
+import com.einzig.ipst2.parse.IdleListener;
 import com.einzig.ipst2.parse.MailBundle;
 import com.einzig.ipst2.util.Logger;
 import com.einzig.ipst2.util.PermissionsHelper;
@@ -163,6 +166,10 @@ public class MainActivity extends AppCompatActivity
      * Database Handle for getting portals and such
      */
     private DatabaseInterface db;
+    /**
+     * Dashboard counts, reused when switching tabs
+     */
+    private PortalSummary summary;
     /**  */
     private LocalDate viewDate;
 
@@ -171,6 +178,7 @@ public class MainActivity extends AppCompatActivity
      */
     public MainActivity() {
         db = new DatabaseInterface(this);
+        summary = null;
         viewDate = null;
     }
 
@@ -178,16 +186,13 @@ public class MainActivity extends AppCompatActivity
      * Build and showing the UI once emails are parsed.
      */
     public void buildUIAfterParsing() {
-        DatabaseInterface db = new DatabaseInterface(this);
         PreferencesHelper helper = new PreferencesHelper(this);
-        long accepted = db.getAcceptedCount(helper.isSeerOnly());
-        long pending = db.getPendingCount(helper.isSeerOnly());
-        long rejected = db.getRejectedCount(helper.isSeerOnly());
+        summary = null;
+        new SummaryGrabber(this, db).execute();
         progress_view_mainactivity.setVisibility(View.INVISIBLE);
         mainui_mainactivity.setVisibility(View.VISIBLE);
         tabs_mainactivity.setVisibility(View.VISIBLE);
         viewButton.setVisibility(View.VISIBLE);
-        formatUI(accepted, rejected, pending);
         todaytab.setOnCheckedChangeListener(this);
         weektab.setOnCheckedChangeListener(this);
         monthtab.setOnCheckedChangeListener(this);
@@ -248,39 +253,48 @@ public class MainActivity extends AppCompatActivity
                 String.format(Locale.getDefault(), "%.1f%%", ((pending * 100) / (totalnum))));
     }
 
+    /**
+     * Format UI for the selected radio button using the cached summary. Does nothing to the
+     * counts until the summary has been loaded.
+     */
     public void formatUIFromRadio(int viewID) {
-        PreferencesHelper helper = new PreferencesHelper(this);
         Button viewList = (Button) findViewById(R.id.viewlist_mainactivity);
+        int range = PortalSummary.RANGE_ALL;
         switch (viewID) {
             case R.id.todaytab_mainactivity:
                 viewDate = new LocalDate();
+                range = PortalSummary.RANGE_TODAY;
                 viewList.setText(R.string.viewlisttoday);
                 break;
             case R.id.weektab_mainactivity:
                 viewDate = new LocalDate().minusDays(7);
+                range = PortalSummary.RANGE_WEEK;
                 viewList.setText(R.string.viewlistweek);
                 break;
             case R.id.monthtab_mainactivity:
                 viewDate = new LocalDate().minusMonths(1);
+                range = PortalSummary.RANGE_MONTH;
                 viewList.setText(R.string.viewlistmonth);
                 break;
             case R.id.alltab_mainactivity:
                 viewDate = null;
-                formatUI(db.getAcceptedCount(helper.isSeerOnly()),
-                        db.getRejectedCount(helper.isSeerOnly()),
-                        db.getPendingCount(helper.isSeerOnly()));
                 viewList.setText(R.string.viewlistall);
                 break;
         }
         Logger.d("viewDate -> " + viewDate);
-        if (viewDate == null)
-            formatUI(db.getAcceptedCount(helper.isSeerOnly()),
-                    db.getRejectedCount(helper.isSeerOnly()),
-                    db.getPendingCount(helper.isSeerOnly()));
-        else
-            formatUI(db.getAcceptedCountByResponseDate(viewDate, helper.isSeerOnly()),
-                    db.getRejectedCountByResponseDate(viewDate, helper.isSeerOnly()),
-                    db.getPendingCountByDate(viewDate, helper.isSeerOnly()));
+        if (summary != null)
+            formatUI(summary.getAccepted(range), summary.getRejected(range),
+                    summary.getPending(range));
+    }
+
+    /**
+     * Called by SummaryGrabber once the dashboard counts have been loaded.
+     *
+     * @param summary Counts for every range on the dashboard
+     */
+    public void onSummaryLoaded(PortalSummary summary) {
+        this.summary = summary;
+        formatUIFromRadio(tabs_mainactivity.getCheckedRadioButtonId());
     }
 
     /**
@@ -459,12 +473,20 @@ public class MainActivity extends AppCompatActivity
     private void onHavePermissions(boolean shouldRefresh) {
         PreferencesHelper helper = new PreferencesHelper(getApplicationContext());
         if (!helper.isInitialized(helper.resetKey())) {
+            IdleListener.stopListening();
             db.deleteAll();
             helper.clearAll();
         }
         helper.initPreferences();
 
         helper.printAllPreferences();
+        if (helper.isInitialized(helper.emailKey())) {
+            Account account = getAccount();
+            if (account != null) {
+                IdleListener.startListening(this, account);
+                HistoryBackfill.startIfNeeded(this, account);
+            }
+        }
         if (!helper.getManualRefresh() || shouldRefresh) {
             if (helper.isInitialized(helper.emailKey())) {
                 parseEmail();
@@ -505,7 +527,9 @@ public class MainActivity extends AppCompatActivity
         Account me = getAccount();
         if (me != null) {
             getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+            IdleListener.startListening(this, me);
         } else {
+            IdleListener.stopListening();
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
@@ -569,6 +593,12 @@ public class MainActivity extends AppCompatActivity
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        db.close();
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -624,10 +654,10 @@ public class MainActivity extends AppCompatActivity
     /**
      * Parses emails for portals
      * <p>
-     * Runs 3 tasks to:
+     * Runs 2 tasks to:
      * <ol>
-     * <li>Get OAuth token</li>
-     * <li>Search for relevant emails</li>
+     * <li>Search for relevant emails, reusing the connection from the last refresh if it's still
+     * open</li>
      * <li>Parse portals from the relevant emails</li>
      * </ol>
      * </p>
@@ -638,8 +668,7 @@ public class MainActivity extends AppCompatActivity
     private void parseEmailWork(Account account, final ProgressDialog dialog) {
         try {
             Logger.d("Showing DIALOG");
-            String token = new AuthenticatorTask(this, account).execute().get();
-            final MailBundle bundle = new GetMailTask(this, account, token).execute().get();
+            final MailBundle bundle = new GetMailTask(this, account).execute().get();
             runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
@@ -352,6 +352,12 @@ public class PSDetailsActivity extends AppCompatActivity {
 
     }
 
+    @Override
+    protected void onDestroy() {
+        db.close();
+        super.onDestroy();
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
@@ -420,7 +426,6 @@ public class PSDetailsActivity extends AppCompatActivity {
     }
 
     public void deletePortal() {
-        DatabaseInterface db = new DatabaseInterface(this);
         if (portal != null)
             if (portal instanceof PortalAccepted)
                 db.deleteAccepted((PortalAccepted) portal);
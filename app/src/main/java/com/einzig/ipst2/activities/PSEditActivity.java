@@ -43,9 +43,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.einzig.ipst2.R;
-import com.einzig.ipst2.database.AcceptedPortalContract;
 import com.einzig.ipst2.database.DatabaseInterface;
-import com.einzig.ipst2.database.RejectedPortalContract;
 import com.einzig.ipst2.portal.PortalAccepted;
 import com.einzig.ipst2.portal.PortalRejected;
 import com.einzig.ipst2.portal.PortalResponded;
@@ -118,6 +116,12 @@ public class PSEditActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        db.close();
+        super.onDestroy();
+    }
+
     @OnClick(R.id.saveportalbutton_pseditactivity)
     public void tappedSave() {
         new AlertDialog.Builder(this, R.style.dialogtheme).setTitle(
@@ -137,80 +141,10 @@ public class PSEditActivity extends AppCompatActivity {
                 .show();
     }
 
-    /**
-     * Add a portal to the database when updating portal entry
-     *
-     * @param portal Instance of PortalAccepted to add to the database
-     */
-    public void addPortalAccepted(PortalAccepted portal, PortalSubmission oldPortal) {
-        PortalSubmission pending =
-                db.getPendingPortal(oldPortal.getPictureURL(), oldPortal.getName(), helper.isSeerOnly());
-        PortalRejected rejected =
-                db.getRejectedPortal(oldPortal.getPictureURL(), oldPortal.getName(), helper.isSeerOnly());
-        if (pending != null) {
-            portal.setDateSubmitted(pending.getDateSubmitted());
-            db.deletePending(pending);
-        } else if (rejected != null) {
-            db.deleteRejected(rejected);
-        } else {
-            portal.setDateSubmitted(portal.getDateResponded());
-        }
-        db.addPortalAccepted(portal);
-    }
-
-    /**
-     * Add a portal to the database when updating portal entry
-     *
-     * @param portal Instance of PortalResponded to add to the database
-     */
-    public void addPortalPending(PortalSubmission portal, PortalResponded oldPortal) {
-        if(oldPortal instanceof PortalAccepted)
-            db.deleteAccepted((PortalAccepted)oldPortal);
-        else if(oldPortal instanceof PortalRejected)
-            db.deleteRejected((PortalRejected)oldPortal);
-        db.addPortalSubmission(portal);
-    }
-
-    /**
-     * Add a portal to the database when updating portal entry
-     *
-     * @param portal Instance of PortalRejected to add to the database
-     */
-    public void addPortalRejected(PortalRejected portal, PortalSubmission oldPortal) {
-        PortalSubmission pending =
-                db.getPendingPortal(oldPortal.getPictureURL(), oldPortal.getName(), helper.isSeerOnly());
-        PortalAccepted accepted =
-                db.getAcceptedPortal(oldPortal.getPictureURL(), oldPortal.getName(), helper.isSeerOnly());
-        if (pending != null) {
-            portal.setDateSubmitted(pending.getDateSubmitted());
-            db.deletePending(pending);
-        } else if (accepted != null) {
-            db.deleteAccepted(accepted);
-        } else {
-            portal.setDateSubmitted(portal.getDateResponded());
-        }
-        db.addPortalRejected(portal);
-    }
-
     public void updatePortal() {
         portal.setName(name_pseditactivity.getText().toString());
-        if (portal != null) {
-            if (portal instanceof PortalAccepted && oldPortal instanceof PortalAccepted)
-                db.updateAccepted((PortalAccepted) portal, (PortalAccepted) oldPortal);
-            else if (portal instanceof PortalRejected && oldPortal instanceof PortalRejected)
-                db.updateRejected((PortalRejected) portal, (PortalRejected) oldPortal);
-            else if (portal instanceof PortalAccepted && !(oldPortal instanceof PortalAccepted)) {
-                addPortalAccepted((PortalAccepted) portal, oldPortal);
-            } else if (portal instanceof PortalRejected && !(oldPortal instanceof PortalRejected)) {
-                addPortalRejected((PortalRejected) portal, oldPortal);
-            } else if ((!(portal instanceof PortalRejected) && !(oldPortal instanceof PortalRejected))
-                    && (!(portal instanceof PortalAccepted) && !(oldPortal instanceof PortalAccepted))) {
-                db.updatePending(portal, oldPortal);
-            } else {
-                if (oldPortal instanceof PortalResponded)
-                    addPortalPending(portal, (PortalResponded) oldPortal);
-            }
-        }
+        if (portal != null)
+            db.update(portal, oldPortal);
         setResult(Activity.RESULT_OK, getIntent());
         Toast.makeText(this, "Portal Edit Complete", Toast.LENGTH_SHORT).show();
         finish();
@@ -50,17 +50,14 @@ import android.widget.SearchView;
 import com.einzig.ipst2.R;
 import com.einzig.ipst2.adapters.ListItemAdapter_PS;
 import com.einzig.ipst2.database.DatabaseInterface;
+import com.einzig.ipst2.database.PagedPortalList;
 import com.einzig.ipst2.database.PortalGrabber;
 import com.einzig.ipst2.portal.PortalSubmission;
-import com.einzig.ipst2.sort.SortHelper;
 import com.einzig.ipst2.util.DialogHelper;
 import com.einzig.ipst2.util.Logger;
 import com.einzig.ipst2.util.PreferencesHelper;
 import com.einzig.ipst2.util.ThemeHelper;
 
-import java.util.Collections;
-import java.util.Vector;
-
 import butterknife.BindView;
 import butterknife.ButterKnife;
 
@@ -75,7 +72,7 @@ public class PSListActivity extends AppCompatActivity {
     String RANGE;
     String TYPE;
     ProgressDialog dialog;
-    Vector<? extends PortalSubmission> psList = new Vector<>();
+    PagedPortalList psList;
     private DatabaseInterface db;
 
     public PSListActivity() {
@@ -104,19 +101,24 @@ public class PSListActivity extends AppCompatActivity {
         new PortalGrabber(this, RANGE, TYPE, db).execute();
     }
 
+    @Override
+    protected void onDestroy() {
+        db.close();
+        super.onDestroy();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
     }
 
-    public void AfterParse(Vector<? extends PortalSubmission> _psList) {
+    public void AfterParse(PagedPortalList _psList) {
         try {
             dialog.dismiss();
             this.psList = _psList;
             if (psList != null) {
                 if (psList.size() > 0) {
                     Logger.d("PS LIST SIZE: " + psList.size());
-                    SortHelper.sortList(psList, this);
                     listView.setAdapter(new ListItemAdapter_PS(psList, PSListActivity.this));
                     if (ThemeHelper.isDarkTheme(this))
                         listView.setSelector(android.R.color.transparent);
@@ -129,6 +131,9 @@ public class PSListActivity extends AppCompatActivity {
                                 PortalSubmission portal =
                                         ((ListItemAdapter_PS) listView.getAdapter())
                                                 .shownItems.get(i);
+                                // Still loading, the row is blank so there's nothing to open
+                                if (portal == null)
+                                    return;
                                 Intent intent = new Intent(PSListActivity.this,
                                         PSDetailsActivity.class);
                                 intent.putExtra(PORTAL_KEY, (Parcelable) portal);
@@ -24,6 +24,7 @@
 
 package com.einzig.ipst2.activities;
 
+import android.accounts.Account;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
@@ -47,6 +48,8 @@ import com.einzig.ipst2.R;
 import com.einzig.ipst2.billing.SelectDonateTypeActivity;
 import com.einzig.ipst2.billing.SkusActivity;
 import com.einzig.ipst2.database.DatabaseInterface;
+import com.einzig.ipst2.parse.IdleListener;
+import com.einzig.ipst2.parse.ReparseTask;
 import com.einzig.ipst2.util.Logger;
 import com.einzig.ipst2.util.PreferencesHelper;
 import com.einzig.ipst2.util.SendMessageHelper;
@@ -237,8 +240,10 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
     public static class DBPreferenceFragment extends PreferenceFragment {
         public void clearAllData() {
+            IdleListener.stopListening();
             DatabaseInterface db = new DatabaseInterface(getActivity());
             db.deleteAll();
+            db.close();
             PreferencesHelper helper = new PreferencesHelper(getActivity());
             helper.clearAll();
             helper.initPreferences();
@@ -277,6 +282,38 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
             }
         }
 
+        public void confirmReparseDialog() {
+            try {
+                getActivity().runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        new AlertDialog.Builder(getActivity(), R.style.dialogtheme)
+                                .setTitle(R.string.confirmreparse_preftitle)
+                                .setMessage(R.string.confirmreparsepref_message)
+                                .setPositiveButton(R.string.confirm,
+                                        new DialogInterface.OnClickListener() {
+                                            @Override
+                                            public void onClick(DialogInterface dialog, int which) {
+                                                new ReparseTask((SettingsActivity) getActivity())
+                                                        .execute();
+                                            }
+                                        })
+                                .setNegativeButton(R.string.cancel,
+                                        new DialogInterface.OnClickListener() {
+                                            @Override
+                                            public void onClick(DialogInterface dialogInterface,
+                                                    int i) {
+                                            }
+                                        })
+                                .setIcon(R.drawable.ic_warning)
+                                .show();
+                    }
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
@@ -296,6 +333,15 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
                             return false;
                         }
                     });
+            DBPreferenceFragment.this.findPreference(getResources()
+                    .getString(R.string.reparseKey))
+                    .setOnPreferenceClickListener(new Preference.OnPreferenceClickListener() {
+                        @Override
+                        public boolean onPreferenceClick(Preference preference) {
+                            confirmReparseDialog();
+                            return false;
+                        }
+                    });
             // TODO remove hardcoded pref string
             Preference exportDBPref = DBPreferenceFragment.this.findPreference("exportdb_pref");
             if (exportDBPref != null)
@@ -352,7 +398,8 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
     }
 
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
-    public static class MiscSettingsFragment extends PreferenceFragment {
+    public static class MiscSettingsFragment extends PreferenceFragment
+            implements SharedPreferences.OnSharedPreferenceChangeListener {
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
@@ -369,6 +416,35 @@ public class SettingsActivity extends AppCompatPreferenceActivity {
             }
             return super.onOptionsItemSelected(item);
         }
+
+        @Override
+        public void onPause() {
+            super.onPause();
+            PreferenceManager.getDefaultSharedPreferences(getActivity())
+                    .unregisterOnSharedPreferenceChangeListener(this);
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            PreferenceManager.getDefaultSharedPreferences(getActivity())
+                    .registerOnSharedPreferenceChangeListener(this);
+        }
+
+        /**
+         * Start or stop listening for new email when push updates is turned on or off
+         */
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences preferences, String key) {
+            PreferencesHelper helper = new PreferencesHelper(getActivity());
+            if (!helper.pushKey().equals(key))
+                return;
+            if (helper.getPushUpdates() && helper.isInitialized(helper.emailKey()))
+                IdleListener.startListening(getActivity(),
+                        new Account(helper.get(helper.emailKey()), "com.google"));
+            else
+                IdleListener.stopListening();
+        }
     }
 
     @TargetApi(Build.VERSION_CODES.HONEYCOMB)
@@ -35,6 +35,7 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.einzig.ipst2.R;
+import com.einzig.ipst2.database.PagedPortalList;
 import com.einzig.ipst2.portal.PortalAccepted;
 import com.einzig.ipst2.portal.PortalRejected;
 import com.einzig.ipst2.portal.PortalSubmission;
@@ -43,26 +44,23 @@ import com.einzig.ipst2.util.PreferencesHelper;
 
 import org.joda.time.format.DateTimeFormatter;
 
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Vector;
-
 // Custom list item class for menu items
-public class ListItemAdapter_PS extends BaseAdapter implements Filterable {
-    /**  */
-    public ArrayList<? extends PortalSubmission> shownItems;
+public class ListItemAdapter_PS extends BaseAdapter implements Filterable,
+        PagedPortalList.OnChangeListener {
+    /** Portals currently shown, loaded from the database as they're scrolled to */
+    public PagedPortalList shownItems;
     /** Application context */
     private Context context;
-    /**  */
-    private Vector<? extends PortalSubmission> originalItems;
+    /** All portals in the list, before filtering */
+    private PagedPortalList originalItems;
     /**  */
     private SubmissionFilter submissionFilter;
 
-    public ListItemAdapter_PS(final Vector<? extends PortalSubmission> items, Context context) {
+    public ListItemAdapter_PS(final PagedPortalList items, Context context) {
         this.context = context;
         this.originalItems = items;
-        this.shownItems = new ArrayList<>(items);
+        this.shownItems = items;
+        items.setOnChangeListener(this);
     }
 
     public int getCount() {
@@ -84,7 +82,7 @@ public class ListItemAdapter_PS extends BaseAdapter implements Filterable {
     }
 
     public long getItemId(int position) {
-        return this.shownItems.get(position).hashCode();
+        return position;
     }
 
     public View getView(int position, View convertView, ViewGroup parent) {
@@ -92,6 +90,9 @@ public class ListItemAdapter_PS extends BaseAdapter implements Filterable {
         @SuppressLint("ViewHolder") LinearLayout itemLayout =
                 (LinearLayout) LayoutInflater.from(context)
                         .inflate(R.layout.row_pslist, parent, false);
+        // The portal's page is still loading, onPortalsChanged redraws the row once it's loaded
+        if (item == null)
+            return itemLayout;
         ImageView iconView = (ImageView) itemLayout.findViewById(R.id.status_icon);
         if (iconView != null) {
             if (item instanceof PortalAccepted) {
@@ -123,48 +124,26 @@ public class ListItemAdapter_PS extends BaseAdapter implements Filterable {
         return itemLayout;
     }
 
-    public void resetData() {
-        this.shownItems = new ArrayList<>(originalItems);
+    @Override
+    public void onPortalsChanged() {
         notifyDataSetChanged();
     }
 
-    /*
-     * Simple Sort class to sort ps by name
-     * */
-    public static class SortPortalSubmissions_alph implements Comparator<PortalSubmission> {
-        @Override
-        public int compare(PortalSubmission o1, PortalSubmission o2) {
-            return o1.getName().compareTo(o2.getName());
-        }
-    }
-
-    /*
-   * Simple Sort class to sort ps by date responded
-   * */
-    public static class SortPortalSubmissions_dateresp implements Comparator<PortalSubmission> {
-        @Override
-        public int compare(PortalSubmission o1, PortalSubmission o2) {
-            int portal1int = o1.getDaysSinceResponse();
-            int portal2int = o2.getDaysSinceResponse();
-
-            if (portal1int > portal2int) {
-                return 1;
-            } else if (portal1int < portal2int) {
-                return -1;
-            } else {
-                return 0;
-            }
-        }
+    public void resetData() {
+        setShownItems(originalItems);
     }
 
-    /*
-     * Simple Sort class to sort ps by date submitted
-     * */
-    public static class SortPortalSubmissions_datesub implements Comparator<PortalSubmission> {
-        @Override
-        public int compare(PortalSubmission o1, PortalSubmission o2) {
-            return o1.getDateSubmitted().compareTo(o2.getDateSubmitted());
-        }
+    /**
+     * Show a different list of portals and stop listening to the one shown before
+     *
+     * @param items Portals to show
+     */
+    private void setShownItems(PagedPortalList items) {
+        if (shownItems != originalItems)
+            shownItems.setOnChangeListener(null);
+        shownItems = items;
+        items.setOnChangeListener(this);
+        notifyDataSetChanged();
     }
 
     private class SubmissionFilter extends Filter {
@@ -172,28 +151,21 @@ public class ListItemAdapter_PS extends BaseAdapter implements Filterable {
         protected FilterResults performFiltering(CharSequence constraint) {
             Logger.d("FILTERED: " + constraint);
             FilterResults results = new FilterResults();
-            if (constraint == null || constraint.length() == 0) {
-                results.values = new ArrayList<>(originalItems);
-                results.count = originalItems.size();
-            } else {
-                List<PortalSubmission> nList = new ArrayList<>();
-                for (PortalSubmission p : originalItems) {
-                    if (p.getName().toUpperCase().contains(constraint.toString().toUpperCase()))
-                        nList.add(p);
-                }
-                results.values = nList;
-                results.count = nList.size();
-            }
+            PagedPortalList nList;
+            if (constraint == null || constraint.length() == 0)
+                nList = originalItems;
+            else
+                nList = originalItems.search(constraint.toString());
+            results.values = nList;
+            results.count = nList.size();
             return results;
         }
 
         @Override
         protected void publishResults(CharSequence constraint, FilterResults results) {
             try {
-                ListItemAdapter_PS.this.shownItems =
-                        (ArrayList<? extends PortalSubmission>) results.values;
+                setShownItems((PagedPortalList) results.values);
                 System.out.println("PUBLISHED: " + ListItemAdapter_PS.this.shownItems.size());
-                notifyDataSetChanged();
             } catch (Exception e) {
                 e.printStackTrace();
             }
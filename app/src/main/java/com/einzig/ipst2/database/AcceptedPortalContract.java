@@ -26,6 +26,9 @@ import android.provider.BaseColumns;
 import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry;
 
 /**
+ * Table of accepted portals used before database version 4. Only referenced by migrations, since
+ * all portals are now stored in the table described by {@link PortalContract}.
+ *
  * @author Ryan Porterfield
  * @since 2017-06-24
  */
@@ -34,9 +37,9 @@ public class AcceptedPortalContract {
     static final String SQL_CREATE_ENTRIES =
             "CREATE TABLE " + AcceptedPortalEntry.TABLE_ACCEPTED + " (" +
                     PendingPortalEntry.COLUMN_NAME + " TEXT NOT NULL, " +
-                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + " DATETIME NOT NULL, " +
+                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + " INTEGER NOT NULL, " +
                     PendingPortalEntry.COLUMN_PICTURE_URL + " TEXT, " +
-                    PendingPortalEntry.COLUMN_DATE_RESPONDED + " DATETIME NOT NULL, " +
+                    PendingPortalEntry.COLUMN_DATE_RESPONDED + " INTEGER NOT NULL, " +
                     AcceptedPortalEntry.COLUMN_LIVE_ADDRESS + " TEXT, " +
                     AcceptedPortalEntry.COLUMN_INTEL_LINK_URL + " TEXT, PRIMARY KEY (" +
                     PendingPortalEntry.COLUMN_PICTURE_URL + ", " + PendingPortalEntry.COLUMN_NAME
@@ -45,6 +48,20 @@ public class AcceptedPortalContract {
     static final String SQL_DELETE_ENTRIES =
             "DROP TABLE IF EXISTS " + AcceptedPortalEntry.TABLE_ACCEPTED;
 
+    /** Index used by date range queries on the date the portal was responded to */
+    static final String SQL_CREATE_DATE_RESPONDED_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + AcceptedPortalEntry.TABLE_ACCEPTED + "_" +
+                    PendingPortalEntry.COLUMN_DATE_RESPONDED + " ON " +
+                    AcceptedPortalEntry.TABLE_ACCEPTED + " (" +
+                    PendingPortalEntry.COLUMN_DATE_RESPONDED + ")";
+
+    /** Index used by date range queries on the date the portal was submitted */
+    static final String SQL_CREATE_DATE_SUBMITTED_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + AcceptedPortalEntry.TABLE_ACCEPTED + "_" +
+                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + " ON " +
+                    AcceptedPortalEntry.TABLE_ACCEPTED + " (" +
+                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + ")";
+
     private AcceptedPortalContract() {
     }
 
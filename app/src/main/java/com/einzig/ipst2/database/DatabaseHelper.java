@@ -0,0 +1,354 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.einzig.ipst2.database.SyncStateContract.SyncStateEntry;
+import com.einzig.ipst2.util.Logger;
+
+import static com.einzig.ipst2.database.AcceptedPortalContract.AcceptedPortalEntry.TABLE_ACCEPTED;
+import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.TABLE_PENDING;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_RESPONDED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_SUBMITTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_INTEL_LINK_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_LIVE_ADDRESS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_NAME;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_PICTURE_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_REJECTION_REASON;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_STATUS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_ACCEPTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_PENDING;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_REJECTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.TABLE_PORTALS;
+import static com.einzig.ipst2.database.RejectedPortalContract.RejectedPortalEntry.TABLE_REJECTED;
+
+/**
+ * Owns the schema of the application database. Only {@link DatabaseManager} should create one of
+ * these, everything else goes through a {@link DatabaseInterface}.
+ */
+class DatabaseHelper extends SQLiteOpenHelper {
+    /** Database name */
+    static final private String DATABASE_NAME;
+    /** Database version */
+    static final private int DATABASE_VERSION;
+    /**
+     * The portals table as it was created in version 4. Upgrades from before version 4 create
+     * this rather than the current schema, so the later upgrade steps find what they expect.
+     */
+    static final private String SQL_CREATE_PORTALS_V4 =
+            "CREATE TABLE " + TABLE_PORTALS + " (" +
+                    COLUMN_NAME + " TEXT NOT NULL, " +
+                    COLUMN_PICTURE_URL + " TEXT, " +
+                    COLUMN_STATUS + " INTEGER NOT NULL, " +
+                    COLUMN_DATE_SUBMITTED + " INTEGER NOT NULL, " +
+                    COLUMN_DATE_RESPONDED + " INTEGER, " +
+                    COLUMN_LIVE_ADDRESS + " TEXT, " +
+                    COLUMN_INTEL_LINK_URL + " TEXT, " +
+                    COLUMN_REJECTION_REASON + " TEXT, PRIMARY KEY (" +
+                    COLUMN_PICTURE_URL + ", " + COLUMN_NAME + "))";
+    /** The indexes on the portals table in version 4, replaced in version 5 */
+    static final private String[] SQL_CREATE_PORTALS_V4_INDEXES = {
+            "CREATE INDEX " + TABLE_PORTALS + "_" + COLUMN_STATUS + "_" + COLUMN_DATE_SUBMITTED +
+                    " ON " + TABLE_PORTALS + " (" + COLUMN_STATUS + ", " +
+                    COLUMN_DATE_SUBMITTED + ")",
+            "CREATE INDEX " + TABLE_PORTALS + "_" + COLUMN_STATUS + "_" + COLUMN_DATE_RESPONDED +
+                    " ON " + TABLE_PORTALS + " (" + COLUMN_STATUS + ", " +
+                    COLUMN_DATE_RESPONDED + ")"
+    };
+    /** The sync state table as it was created in version 7, before the backfill column */
+    static final private String SQL_CREATE_SYNC_STATE_V7 =
+            "CREATE TABLE " + SyncStateEntry.TABLE_SYNC_STATE + " (" +
+                    SyncStateEntry.COLUMN_FOLDER + " TEXT PRIMARY KEY, " +
+                    SyncStateEntry.COLUMN_UID_VALIDITY + " INTEGER NOT NULL, " +
+                    SyncStateEntry.COLUMN_LAST_UID + " INTEGER NOT NULL)";
+
+    static {
+        DATABASE_NAME = "IPSTSubmissionDB";
+        DATABASE_VERSION = 10;
+    }
+
+    /**
+     * Create a new DatabaseHelper for the application database
+     *
+     * @param context Application context used by super class
+     */
+    DatabaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Lets the UI read while an email parse or CSV import is writing
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * Convert the dates in a column from ISO date strings to the number of days since 1970-01-01.
+     * Values which aren't valid dates are left alone.
+     *
+     * @param db     A reference to the SQLiteDatabase object used by the app
+     * @param table  Table being converted
+     * @param column Date column being converted
+     */
+    static private void convertDateColumn(SQLiteDatabase db, String table, String column) {
+        db.execSQL("UPDATE " + table + " SET " + column + " = CAST(julianday(" + column +
+                ") - julianday('1970-01-01') AS INTEGER) WHERE typeof(" + column +
+                ") = 'text' AND julianday(" + column + ") IS NOT NULL");
+    }
+
+    /**
+     * Version 3 stores dates as the number of days since 1970-01-01 instead of ISO date strings.
+     * The existing columns have NUMERIC affinity, so they can hold the integers without rebuilding
+     * the tables.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void convertDatesToEpochDays(SQLiteDatabase db) {
+        convertDateColumn(db, TABLE_PENDING, COLUMN_DATE_SUBMITTED);
+        convertDateColumn(db, TABLE_ACCEPTED, COLUMN_DATE_SUBMITTED);
+        convertDateColumn(db, TABLE_ACCEPTED, COLUMN_DATE_RESPONDED);
+        convertDateColumn(db, TABLE_REJECTED, COLUMN_DATE_SUBMITTED);
+        convertDateColumn(db, TABLE_REJECTED, COLUMN_DATE_RESPONDED);
+    }
+
+    /**
+     * Create the indexes used by date range queries
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void createDateIndexes(SQLiteDatabase db) {
+        db.execSQL(PendingPortalContract.SQL_CREATE_DATE_SUBMITTED_INDEX);
+        db.execSQL(AcceptedPortalContract.SQL_CREATE_DATE_RESPONDED_INDEX);
+        db.execSQL(AcceptedPortalContract.SQL_CREATE_DATE_SUBMITTED_INDEX);
+        db.execSQL(RejectedPortalContract.SQL_CREATE_DATE_RESPONDED_INDEX);
+        db.execSQL(RejectedPortalContract.SQL_CREATE_DATE_SUBMITTED_INDEX);
+    }
+
+    /**
+     * Create all tables and indexes used by the current version of the database
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static void createTables(SQLiteDatabase db) {
+        db.execSQL(PortalContract.SQL_CREATE_ENTRIES);
+        createIndexes(db);
+        createSearch(db);
+        db.execSQL(SyncStateContract.SQL_CREATE_ENTRIES);
+        db.execSQL(FolderCatalogContract.SQL_CREATE_ENTRIES);
+        db.execSQL(WindowProgressContract.SQL_CREATE_ENTRIES);
+    }
+
+    /**
+     * Create the full text index over the portals table and the triggers which keep it up to date
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void createSearch(SQLiteDatabase db) {
+        db.execSQL(PortalContract.SQL_CREATE_SEARCH);
+        for (String trigger : PortalContract.SQL_CREATE_SEARCH_TRIGGERS)
+            db.execSQL(trigger);
+    }
+
+    /**
+     * Create the indexes on the portals table
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void createIndexes(SQLiteDatabase db) {
+        for (String index : PortalContract.SQL_CREATE_INDEXES)
+            db.execSQL(index);
+    }
+
+    /**
+     * Drop all tables used by the application
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static void dropTables(SQLiteDatabase db) {
+        db.execSQL(PortalContract.SQL_DELETE_SEARCH);
+        db.execSQL(PortalContract.SQL_DELETE_ENTRIES);
+        db.execSQL(SyncStateContract.SQL_DELETE_ENTRIES);
+        db.execSQL(FolderCatalogContract.SQL_DELETE_ENTRIES);
+        db.execSQL(WindowProgressContract.SQL_DELETE_ENTRIES);
+    }
+
+    /**
+     * Copy the portals in one of the tables used before version 4 into the portals table
+     *
+     * @param db      A reference to the SQLiteDatabase object used by the app
+     * @param table   Table the portals are copied from
+     * @param status  Status of the portals in table
+     * @param columns Columns copied from table, other than the name, picture URL and date submitted
+     */
+    static private void copyPortals(SQLiteDatabase db, String table, int status,
+            String... columns) {
+        StringBuilder names = new StringBuilder();
+        for (String column : columns)
+            names.append(", ").append(column);
+        db.execSQL("INSERT OR IGNORE INTO " + TABLE_PORTALS + " (" + COLUMN_STATUS + ", " +
+                COLUMN_NAME + ", " + COLUMN_PICTURE_URL + ", " + COLUMN_DATE_SUBMITTED + names +
+                ") SELECT " + status + ", " + COLUMN_NAME + ", " + COLUMN_PICTURE_URL + ", " +
+                COLUMN_DATE_SUBMITTED + names + " FROM " + table);
+    }
+
+    /**
+     * Version 6 adds a full text index used to search portals, built from the existing portals.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void addSearch(SQLiteDatabase db) {
+        createSearch(db);
+        db.execSQL(PortalContract.SQL_REBUILD_SEARCH);
+    }
+
+    /**
+     * Version 7 remembers how far each mail folder has been synced. The table starts empty, so
+     * the first parse after upgrading still searches by the last parse date.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void addSyncState(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_SYNC_STATE_V7);
+    }
+
+    /**
+     * Version 8 caches the mail folders in the user's account. The table starts empty, so the
+     * first parse after upgrading lists the folders on the server once.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void addFolderCatalog(SQLiteDatabase db) {
+        db.execSQL(FolderCatalogContract.SQL_CREATE_ENTRIES);
+    }
+
+    /**
+     * Version 9 records how far the history of a folder synced newest first has been parsed.
+     * Folders synced before then were synced oldest first, so they have no history left.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void addBackfillUid(SQLiteDatabase db) {
+        db.execSQL(SyncStateContract.SQL_ADD_BACKFILL_UID);
+    }
+
+    /**
+     * Version 10 records which date windows of a full resync have been written. The table starts
+     * empty, so a resync interrupted before upgrading starts from the first window again.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void addWindowProgress(SQLiteDatabase db) {
+        db.execSQL(WindowProgressContract.SQL_CREATE_ENTRIES);
+    }
+
+    /**
+     * Version 5 replaces the (status, date) indexes with indexes which also cover the order the
+     * portal lists are sorted in.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void createSortIndexes(SQLiteDatabase db) {
+        db.execSQL("DROP INDEX IF EXISTS " + TABLE_PORTALS + "_" + COLUMN_STATUS + "_" +
+                COLUMN_DATE_SUBMITTED);
+        db.execSQL("DROP INDEX IF EXISTS " + TABLE_PORTALS + "_" + COLUMN_STATUS + "_" +
+                COLUMN_DATE_RESPONDED);
+        createIndexes(db);
+    }
+
+    /**
+     * Version 4 keeps every portal in a single table with a status column, so a portal changing
+     * status is an UPDATE instead of a DELETE from one table and an INSERT into another. Responded
+     * portals are copied first so they win over a stale pending entry for the same portal.
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    static private void mergePortalTables(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_PORTALS_V4);
+        for (String index : SQL_CREATE_PORTALS_V4_INDEXES)
+            db.execSQL(index);
+        copyPortals(db, TABLE_ACCEPTED, STATUS_ACCEPTED, COLUMN_DATE_RESPONDED,
+                COLUMN_LIVE_ADDRESS, COLUMN_INTEL_LINK_URL);
+        copyPortals(db, TABLE_REJECTED, STATUS_REJECTED, COLUMN_DATE_RESPONDED,
+                COLUMN_REJECTION_REASON);
+        copyPortals(db, TABLE_PENDING, STATUS_PENDING);
+        db.execSQL(AcceptedPortalContract.SQL_DELETE_ENTRIES);
+        db.execSQL(PendingPortalContract.SQL_DELETE_ENTRIES);
+        db.execSQL(RejectedPortalContract.SQL_DELETE_ENTRIES);
+    }
+
+    /**
+     * Create tables in the database
+     *
+     * @param db A reference to the SQLiteDatabase object used by the app
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        createTables(db);
+    }
+
+    /**
+     * Migrate the database from oldVersion to newVersion in place, one version at a time, so the
+     * user's portals don't have to be parsed from their email again.
+     * <p>
+     * Each case upgrades the database by exactly one version and falls through to the next.
+     * SQLiteOpenHelper runs the whole upgrade in a single transaction.
+     * </p>
+     *
+     * @param db         A reference to the SQLiteDatabase object used by the app
+     * @param oldVersion The current version of the database
+     * @param newVersion The new version of the database
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Logger.i("DatabaseHelper#onUpgrade", "Upgrading database from version " + oldVersion +
+                " to " + newVersion);
+        switch (oldVersion) {
+        case 1:
+            createDateIndexes(db);
+            // Fall through
+        case 2:
+            convertDatesToEpochDays(db);
+            // Fall through
+        case 3:
+            mergePortalTables(db);
+            // Fall through
+        case 4:
+            createSortIndexes(db);
+            // Fall through
+        case 5:
+            addSearch(db);
+            // Fall through
+        case 6:
+            addSyncState(db);
+            // Fall through
+        case 7:
+            addFolderCatalog(db);
+            // Fall through
+        case 8:
+            addBackfillUid(db);
+            // Fall through
+        case 9:
+            addWindowProgress(db);
+            // Fall through
+        }
+    }
+}
@@ -28,8 +28,10 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+import com.einzig.ipst2.database.FolderCatalogContract.FolderEntry;
+import com.einzig.ipst2.database.WindowProgressContract.WindowEntry;
 import com.einzig.ipst2.portal.PortalAccepted;
 import com.einzig.ipst2.portal.PortalRejected;
 import com.einzig.ipst2.portal.PortalSubmission;
@@ -40,44 +42,94 @@ import org.joda.time.LocalDate;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
-import static com.einzig.ipst2.database.AcceptedPortalContract.AcceptedPortalEntry.COLUMN_INTEL_LINK_URL;
-import static com.einzig.ipst2.database.AcceptedPortalContract.AcceptedPortalEntry.COLUMN_LIVE_ADDRESS;
-import static com.einzig.ipst2.database.AcceptedPortalContract.AcceptedPortalEntry.TABLE_ACCEPTED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_DATE_RESPONDED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_DATE_SUBMITTED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_NAME;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_PICTURE_URL;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.TABLE_PENDING;
-import static com.einzig.ipst2.database.RejectedPortalContract.RejectedPortalEntry.COLUMN_REJECTION_REASON;
-import static com.einzig.ipst2.database.RejectedPortalContract.RejectedPortalEntry.TABLE_REJECTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_RESPONDED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_SUBMITTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_INTEL_LINK_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_LIVE_ADDRESS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_NAME;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_PICTURE_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_REJECTION_REASON;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_STATUS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_ACCEPTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_PENDING;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_REJECTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.TABLE_PORTALS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.TABLE_SEARCH;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry._ID;
+import static com.einzig.ipst2.database.SyncStateContract.SyncStateEntry.COLUMN_BACKFILL_UID;
+import static com.einzig.ipst2.database.SyncStateContract.SyncStateEntry.COLUMN_FOLDER;
+import static com.einzig.ipst2.database.SyncStateContract.SyncStateEntry.COLUMN_LAST_UID;
+import static com.einzig.ipst2.database.SyncStateContract.SyncStateEntry.COLUMN_UID_VALIDITY;
+import static com.einzig.ipst2.database.SyncStateContract.SyncStateEntry.TABLE_SYNC_STATE;
 
 /**
  * @author Ryan Porterfield
  * @since 2017-05-18
  */
-public class DatabaseInterface extends SQLiteOpenHelper {
-    /** The date format that MySQL stores DATETIME objects in */
+public class DatabaseInterface {
+    /** The date format used for dates stored as text by older versions of the database */
     static final public DateTimeFormatter DATE_FORMATTER;
-    /** Database name */
-    static final private String DATABASE_NAME;
-    /** Database version */
-    static final private int DATABASE_VERSION;
+
+    /** Number of portals written per transaction by addAll */
+    static final public int DEFAULT_BATCH_SIZE;
+    /** Column holding the date a list query sorts on when sorting by response date */
+    static final private String COLUMN_SORT_DATE = "sortDate";
+    /**
+     * WHERE clause matching portals responded to, or submitted if pending, between two dates.
+     * Each half can use one of the (status, date) indexes.
+     */
+    static final private String DATE_RANGE_SELECTION;
+    /** WHERE clause matching a portal by picture URL, or by name when it has no picture URL */
+    static final private String MATCH_PORTAL;
+    /** Date a portal was responded to, or the date it was submitted if it's still pending */
+    static final private String SELECT_SORT_DATE;
+    /** WHERE clause matching portals which count towards the seer badge */
+    static final private String SEER_SELECTION;
+    /** List type containing accepted portals */
+    static final private String TYPE_ACCEPTED = "accepted";
+    /** List type containing every portal */
+    static final private String TYPE_ALL = "all";
+    /** List type containing pending portals */
+    static final private String TYPE_PENDING = "pending";
+    /** List type containing rejected portals */
+    static final private String TYPE_REJECTED = "rejected";
 
     static {
         DATE_FORMATTER = ISODateTimeFormat.date();
-        DATABASE_NAME = "IPSTSubmissionDB";
-        DATABASE_VERSION = 1;
+        DEFAULT_BATCH_SIZE = 500;
+        DATE_RANGE_SELECTION = "(" + COLUMN_STATUS + " = " + STATUS_PENDING + " AND " +
+                COLUMN_DATE_SUBMITTED + " BETWEEN ? AND ?) OR (" + COLUMN_STATUS + " IN (" +
+                STATUS_ACCEPTED + ", " + STATUS_REJECTED + ") AND " + COLUMN_DATE_RESPONDED +
+                " BETWEEN ? AND ?)";
+        MATCH_PORTAL = COLUMN_PICTURE_URL + " = ? AND (" + COLUMN_PICTURE_URL + " != '' OR " +
+                COLUMN_NAME + " = ?)";
+        SELECT_SORT_DATE = "COALESCE(" + COLUMN_DATE_RESPONDED + ", " + COLUMN_DATE_SUBMITTED + ")";
+        // The seer badge stopped counting portals submitted from 2015-01-01
+        SEER_SELECTION = COLUMN_DATE_SUBMITTED + " < " +
+                EpochDay.fromLocalDate(new LocalDate(2015, 1, 1));
     }
 
+    /** Context used to find the application's DatabaseManager */
+    final private Context context;
+    /** Reference to the shared connection, null until the first query */
+    private SQLiteDatabase database;
+
     /**
      * Create a new DatabaseInterface to interact with the SQLite database for the application
      *
-     * @param context Context used by super class
+     * @param context Context used to get the shared database connection
      */
     public DatabaseInterface(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        this.database = null;
     }
 
     public <P extends PortalSubmission> void add(P portal) {
@@ -90,15 +142,214 @@ public class DatabaseInterface extends SQLiteOpenHelper {
     }
 
     /**
-     * Add some values to a table in the database.
+     * Release this interface's reference to the shared database connection. The interface can
+     * still be used afterwards, it will just acquire a new reference.
+     */
+    public synchronized void close() {
+        if (database != null) {
+            DatabaseManager.getInstance(context).closeDatabase();
+            database = null;
+        }
+    }
+
+    /**
+     * Insert many portals into the database using one transaction per batch.
+     *
+     * @param portals Portals to add to the database
+     * @return number of portals inserted by each batch
+     * @see #addAll(Iterator, int)
+     */
+    public List<Integer> addAll(Collection<? extends PortalSubmission> portals) {
+        return addAll(portals.iterator(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Insert many portals into the database using one transaction per batch.
+     * <p>
+     * Portals which are already in the database are skipped. An accepted or rejected portal
+     * replaces the pending entry for the same portal, keeping the date it was submitted.
+     * </p>
+     *
+     * @param portals   Portals to add to the database, null entries are skipped
+     * @param batchSize Maximum number of portals written in one transaction
+     * @return number of portals inserted by each batch
+     */
+    public List<Integer> addAll(Iterator<? extends PortalSubmission> portals, int batchSize) {
+        SQLiteDatabase db = getDatabase();
+        List<Integer> counts = new ArrayList<>();
+        PortalBatchWriter writer = new PortalBatchWriter(db);
+        try {
+            while (portals.hasNext()) {
+                int count = 0;
+                db.beginTransaction();
+                try {
+                    for (int i = 0; i < batchSize && portals.hasNext(); ++i) {
+                        PortalSubmission portal = portals.next();
+                        if (portal != null && writer.write(portal))
+                            ++count;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                Logger.d("Batch added " + count + " portals");
+                counts.add(count);
+            }
+        } finally {
+            writer.close();
+        }
+        return counts;
+    }
+
+    /**
+     * Insert portals and record how far their folder has been synced in a single transaction, so
+     * a sync which is killed part way through resumes after the last checkpoint without losing or
+     * repeating any portals.
+     *
+     * @param portals    Portals to add to the database, null entries are skipped
+     * @param checkpoint Sync state of the folder once the portals are written, or null to keep
+     *                   the previous one
+     * @return number of portals inserted
+     * @see #addAll(Iterator, int)
+     */
+    public int addAll(Collection<? extends PortalSubmission> portals, SyncState checkpoint) {
+        SQLiteDatabase db = getDatabase();
+        PortalBatchWriter writer = new PortalBatchWriter(db);
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (PortalSubmission portal : portals) {
+                if (portal != null && writer.write(portal))
+                    ++count;
+            }
+            if (checkpoint != null)
+                setSyncState(checkpoint);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writer.close();
+        }
+        Logger.d("Batch added " + count + " portals");
+        return count;
+    }
+
+    /**
+     * Insert portals parsed from a folder's history and record how far the history has been
+     * parsed in a single transaction. Only the backfill UID of the folder's sync state is
+     * changed, so new email synced in the meantime isn't lost. Once the history is parsed the
+     * backfill's window progress is forgotten.
+     *
+     * @param portals     Portals to add to the database, null entries are skipped
+     * @param folder      Full name of the mail folder
+     * @param uidValidity UIDVALIDITY of the folder the portals were parsed from
+     * @param backfillUid Lowest UID of the parsed range, 0 once the history is parsed
+     * @return number of portals inserted
+     */
+    public int addHistory(Collection<? extends PortalSubmission> portals, String folder,
+            long uidValidity, long backfillUid) {
+        SQLiteDatabase db = getDatabase();
+        PortalBatchWriter writer = new PortalBatchWriter(db);
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (PortalSubmission portal : portals) {
+                if (portal != null && writer.write(portal))
+                    ++count;
+            }
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_BACKFILL_UID, backfillUid);
+            db.update(TABLE_SYNC_STATE, values, COLUMN_FOLDER + " = ? AND " +
+                    COLUMN_UID_VALIDITY + " = ?",
+                    new String[]{folder, String.valueOf(uidValidity)});
+            if (backfillUid == 0)
+                db.delete(WindowEntry.TABLE_WINDOW_PROGRESS, WindowEntry.COLUMN_FOLDER + " = ?",
+                        new String[]{folder});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writer.close();
+        }
+        Logger.d("History batch added " + count + " portals");
+        return count;
+    }
+
+    /**
+     * Insert the portals parsed from a date window of a full resync or history backfill and
+     * record that every email before the end of the window has been parsed, in a single
+     * transaction. The folder's sync state is only written once every window is done.
+     *
+     * @param portals      Portals to add to the database, null entries are skipped
+     * @param folder       Full name of the mail folder
+     * @param uidValidity  UIDVALIDITY of the folder the portals were parsed from
+     * @param parsedBefore Day after the window, every email before it has been parsed
+     * @return number of portals inserted
+     */
+    public int addWindow(Collection<? extends PortalSubmission> portals, String folder,
+            long uidValidity, LocalDate parsedBefore) {
+        SQLiteDatabase db = getDatabase();
+        PortalBatchWriter writer = new PortalBatchWriter(db);
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (PortalSubmission portal : portals) {
+                if (portal != null && writer.write(portal))
+                    ++count;
+            }
+            ContentValues values = new ContentValues();
+            values.put(WindowEntry.COLUMN_FOLDER, folder);
+            values.put(WindowEntry.COLUMN_UID_VALIDITY, uidValidity);
+            values.put(WindowEntry.COLUMN_PARSED_BEFORE, EpochDay.fromLocalDate(parsedBefore));
+            db.insertWithOnConflict(WindowEntry.TABLE_WINDOW_PROGRESS, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writer.close();
+        }
+        Logger.d("Window batch added " + count + " portals");
+        return count;
+    }
+
+    /**
+     * Run a raw query on the shared database connection
+     *
+     * @param sql           SQL query
+     * @param selectionArgs Arguments for wildcards in sql
+     * @return Cursor over the results, which the caller must close
+     */
+    Cursor rawQuery(String sql, String[] selectionArgs) {
+        return getDatabase().rawQuery(sql, selectionArgs);
+    }
+
+    /**
+     * Record a portal in a single transaction. If the portal is already in the database nothing
+     * is written. If an accepted or rejected portal is still pending, the pending entry is replaced
+     * and its submission date is carried over to the new entry.
+     *
+     * @param portal Portal being recorded
+     * @return true if the portal was inserted, otherwise false
+     */
+    public boolean recordPortal(PortalSubmission portal) {
+        SQLiteDatabase db = getDatabase();
+        PortalBatchWriter writer = new PortalBatchWriter(db);
+        db.beginTransaction();
+        try {
+            boolean inserted = writer.write(portal);
+            db.setTransactionSuccessful();
+            return inserted;
+        } finally {
+            db.endTransaction();
+            writer.close();
+        }
+    }
+
+    /**
+     * Add a portal to the database.
      *
-     * @param table  Table key in the database
      * @param values Values to be inserted
      */
-    private void addPortal(String table, ContentValues values) {
-        SQLiteDatabase db = getWritableDatabase();
-        db.insert(table, null, values);
-        db.close();
+    private void addPortal(ContentValues values) {
+        getDatabase().insert(TABLE_PORTALS, null, values);
     }
 
     /**
@@ -110,19 +361,20 @@ public class DatabaseInterface extends SQLiteOpenHelper {
         Logger.d("Add accepted portal: " + portal.getName());
         if (portal.getDateSubmitted() == null)
             portal.setDateSubmitted(portal.getDateResponded());
-        String dateSubmitted = getDateStringSafe(portal.getDateSubmitted());
-        String dateResponded = getDateStringSafe(portal.getDateResponded());
+        long dateSubmitted = EpochDay.fromLocalDateSafe(portal.getDateSubmitted());
+        long dateResponded = EpochDay.fromLocalDateSafe(portal.getDateResponded());
         ContentValues values = new ContentValues();
         // Values put!
         Logger.v("DBI#addPortalAccepted", "Name: " + portal.getName() + "\tSubmitted: " +
-                dateSubmitted + "\tResponded: " + dateResponded);
+                portal.getDateSubmitted() + "\tResponded: " + portal.getDateResponded());
         values.put(COLUMN_NAME, portal.getName());
         values.put(COLUMN_DATE_SUBMITTED, dateSubmitted);
         values.put(COLUMN_PICTURE_URL, portal.getPictureURL());
         values.put(COLUMN_DATE_RESPONDED, dateResponded);
         values.put(COLUMN_LIVE_ADDRESS, portal.getLiveAddress());
         values.put(COLUMN_INTEL_LINK_URL, portal.getIntelLinkURL());
-        addPortal(TABLE_ACCEPTED, values);
+        values.put(COLUMN_STATUS, STATUS_ACCEPTED);
+        addPortal(values);
     }
 
     /**
@@ -132,18 +384,19 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public void addPortalRejected(PortalRejected portal) {
         Logger.d("Add rejected portal: " + portal.getName());
-        String dateSubmitted = getDateStringSafe(portal.getDateSubmitted());
-        String dateResponded = getDateStringSafe(portal.getDateResponded());
+        long dateSubmitted = EpochDay.fromLocalDateSafe(portal.getDateSubmitted());
+        long dateResponded = EpochDay.fromLocalDateSafe(portal.getDateResponded());
         ContentValues values = new ContentValues();
         // Values put!
         Logger.v("DBI#addPortalRejected", "Name: " + portal.getName() + "\tSubmitted: " +
-                dateSubmitted + "\tResponded: " + dateResponded);
+                portal.getDateSubmitted() + "\tResponded: " + portal.getDateResponded());
         values.put(COLUMN_NAME, portal.getName());
         values.put(COLUMN_DATE_SUBMITTED, dateSubmitted);
         values.put(COLUMN_PICTURE_URL, portal.getPictureURL());
         values.put(COLUMN_DATE_RESPONDED, dateResponded);
         values.put(COLUMN_REJECTION_REASON, portal.getRejectionReason());
-        addPortal(TABLE_REJECTED, values);
+        values.put(COLUMN_STATUS, STATUS_REJECTED);
+        addPortal(values);
     }
 
     /**
@@ -155,15 +408,45 @@ public class DatabaseInterface extends SQLiteOpenHelper {
         Logger.d("Add portal submission: " + portal.getName());
         if (portal.getDateSubmitted() == null)
             portal.setDateSubmitted(new LocalDate());
-        String dateSubmitted = DATE_FORMATTER.print(portal.getDateSubmitted());
+        long dateSubmitted = EpochDay.fromLocalDate(portal.getDateSubmitted());
         ContentValues values = new ContentValues();
         // Values put!
         Logger.v("DBI#addPortalSubmission", "Name: " + portal.getName());
         values.put(COLUMN_NAME, portal.getName());
         values.put(COLUMN_DATE_SUBMITTED, dateSubmitted);
-        Logger.v("DBI#addPortalSubmission", "Submitted: " + dateSubmitted);
+        Logger.v("DBI#addPortalSubmission", "Submitted: " + portal.getDateSubmitted());
         values.put(COLUMN_PICTURE_URL, portal.getPictureURL());
-        addPortal(TABLE_PENDING, values);
+        values.put(COLUMN_STATUS, STATUS_PENDING);
+        addPortal(values);
+    }
+
+    /**
+     * Build a portal from a row returned by a list query
+     *
+     * @param cursor Cursor positioned on a row of a list query
+     * @return the portal in the row
+     */
+    static PortalSubmission buildPortal(Cursor cursor) {
+        int status = cursor.getInt(cursor.getColumnIndex(COLUMN_STATUS));
+        if (status == STATUS_ACCEPTED)
+            return new PortalAcceptedBuilder().build(cursor);
+        else if (status == STATUS_REJECTED)
+            return new PortalRejectedBuilder().build(cursor);
+        else
+            return new PortalSubmissionBuilder().build(cursor);
+    }
+
+    /**
+     * @param portal A portal
+     * @return the status stored in the database for portal
+     */
+    static int getStatus(PortalSubmission portal) {
+        if (portal instanceof PortalAccepted)
+            return STATUS_ACCEPTED;
+        else if (portal instanceof PortalRejected)
+            return STATUS_REJECTED;
+        else
+            return STATUS_PENDING;
     }
 
     /**
@@ -203,19 +486,24 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public void deleteAccepted(PortalAccepted portal) {
         Logger.d("Remove accepted portal: " + portal.getName());
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_ACCEPTED, COLUMN_PICTURE_URL + " = ?",
-                new String[]{portal.getPictureURL()});
-        db.close();
+        SQLiteDatabase db = getDatabase();
+        db.delete(TABLE_PORTALS, getStatusSelection(STATUS_ACCEPTED) + " AND " +
+                COLUMN_PICTURE_URL + " = ?", new String[]{portal.getPictureURL()});
     }
 
     /**
      * Clear the database
      */
     public void deleteAll() {
-        SQLiteDatabase db = this.getWritableDatabase();
-        onUpgrade(db, 0, 0);
-        db.close();
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            DatabaseHelper.dropTables(db);
+            DatabaseHelper.createTables(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
     }
 
     /**
@@ -225,9 +513,9 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public void deletePending(PortalSubmission portal) {
         Logger.d("Remove portal submission: " + portal.getName());
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_PENDING, COLUMN_PICTURE_URL + " = ?", new String[]{portal.getPictureURL()});
-        db.close();
+        SQLiteDatabase db = getDatabase();
+        db.delete(TABLE_PORTALS, getStatusSelection(STATUS_PENDING) + " AND " +
+                COLUMN_PICTURE_URL + " = ?", new String[]{portal.getPictureURL()});
     }
 
     /**
@@ -237,10 +525,9 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public void deleteRejected(PortalRejected portal) {
         Logger.d("Remove rejected portal: " + portal.getName());
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_REJECTED, COLUMN_PICTURE_URL + " = ?",
-                new String[]{portal.getPictureURL()});
-        db.close();
+        SQLiteDatabase db = getDatabase();
+        db.delete(TABLE_PORTALS, getStatusSelection(STATUS_REJECTED) + " AND " +
+                COLUMN_PICTURE_URL + " = ?", new String[]{portal.getPictureURL()});
     }
 
     /**
@@ -294,7 +581,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of approved portals
      */
     public long getAcceptedCount(boolean seerOnly) {
-        return getEntryCount(TABLE_ACCEPTED, null, null, seerOnly);
+        return getEntryCount(getStatusSelection(STATUS_ACCEPTED), null, seerOnly);
     }
 
     /**
@@ -304,7 +591,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of portals accepted since fromDate
      */
     public long getAcceptedCountByResponseDate(LocalDate fromDate, boolean seerOnly) {
-        return getCountByDate(TABLE_ACCEPTED, COLUMN_DATE_RESPONDED, fromDate, seerOnly);
+        return getCountByDate(STATUS_ACCEPTED, COLUMN_DATE_RESPONDED, fromDate, seerOnly);
     }
 
     /**
@@ -316,7 +603,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public long getAcceptedCountByResponseDate(LocalDate fromDate, LocalDate toDate, boolean
             seerOnly) {
-        return getCountByDate(TABLE_ACCEPTED, COLUMN_DATE_RESPONDED, fromDate, toDate, seerOnly);
+        return getCountByDate(STATUS_ACCEPTED, COLUMN_DATE_RESPONDED, fromDate, toDate, seerOnly);
     }
 
     /**
@@ -326,7 +613,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of accepted portals submitted since fromDate
      */
     public long getAcceptedCountBySubmissionDate(LocalDate fromDate, boolean seerOnly) {
-        return getCountByDate(TABLE_ACCEPTED, COLUMN_DATE_SUBMITTED, fromDate, seerOnly);
+        return getCountByDate(STATUS_ACCEPTED, COLUMN_DATE_SUBMITTED, fromDate, seerOnly);
     }
 
     /**
@@ -338,7 +625,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public long getAcceptedCountBySubmissionDate(LocalDate fromDate, LocalDate toDate, boolean
             seerOnly) {
-        return getCountByDate(TABLE_ACCEPTED, COLUMN_DATE_SUBMITTED, fromDate, toDate, seerOnly);
+        return getCountByDate(STATUS_ACCEPTED, COLUMN_DATE_SUBMITTED, fromDate, toDate, seerOnly);
     }
 
     /**
@@ -349,40 +636,39 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public PortalAccepted getAcceptedPortal(String pictureURL, String portalName, boolean
             seerOnly) {
-        return getPortal(TABLE_ACCEPTED, pictureURL, portalName, new PortalAcceptedBuilder(),
+        return getPortal(STATUS_ACCEPTED, pictureURL, portalName, new PortalAcceptedBuilder(),
                 seerOnly);
     }
 
     /**
-     * @param table   Database table to search
+     * @param status  Status of the portals
      * @param builder PortalBuilder to build the portal from the query
      * @param <P>     Type of PortalSubmission being returned
-     * @return all portals in table
+     * @return all portals with status
      */
-    private <P extends PortalSubmission> Vector<P> getAll(String table, PortalBuilder<P> builder,
-     boolean seerOnly       ) {
-        return getAll(table, null, null, builder, seerOnly);
+    private <P extends PortalSubmission> Vector<P> getAll(int status, PortalBuilder<P> builder,
+            boolean seerOnly) {
+        return getAll(getStatusSelection(status), null, builder, seerOnly);
     }
 
     /**
-     * @param table         Database table to search
      * @param selection     WHERE claus
      * @param selectionArgs Arguments for wildcards in selection
      * @param builder       PortalBuilder to build the portal from the query
      * @param <P>           Type of PortalSubmission being returned
-     * @return all portals in table which match the selection
+     * @return all portals which match the selection
      */
-    private <P extends PortalSubmission> Vector<P> getAll(String table, String
-            selection, String[] selectionArgs, PortalBuilder<P> builder, boolean seerOnly) {
+    private <P extends PortalSubmission> Vector<P> getAll(String selection,
+            String[] selectionArgs, PortalBuilder<P> builder, boolean seerOnly) {
         Vector<P> portals = new Vector<>();
-        SQLiteDatabase db = getReadableDatabase();
+        SQLiteDatabase db = getDatabase();
 
-        Cursor cursor = db.query(table, null, selection, selectionArgs, null, null, null, null);
+        Cursor cursor = db.query(TABLE_PORTALS, null, getSelection(selection, seerOnly),
+                selectionArgs, null, null, null, null);
         while (cursor.moveToNext()) {
             portals.add(builder.build(cursor));
         }
         cursor.close();
-        db.close();
         return portals;
     }
 
@@ -393,7 +679,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public Vector<PortalAccepted> getAllAccepted(boolean seerOnly) {
         Logger.d("Get all accepted portals");
-        return getAll(TABLE_ACCEPTED, new PortalAcceptedBuilder(), seerOnly);
+        return getAll(STATUS_ACCEPTED, new PortalAcceptedBuilder(), seerOnly);
     }
 
     /**
@@ -409,7 +695,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
     private Vector<PortalAccepted> getAllAcceptedByDate(String dateKey, LocalDate fromDate,
             LocalDate toDate, boolean seerOnly) {
         Logger.d("Getting all accepted portals within date range");
-        Vector<PortalAccepted> portals = getPortalsByDate(TABLE_ACCEPTED, dateKey, fromDate,
+        Vector<PortalAccepted> portals = getPortalsByDate(STATUS_ACCEPTED, dateKey, fromDate,
                 toDate, new PortalAcceptedBuilder(), seerOnly);
         return portals;
     }
@@ -421,7 +707,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public Vector<PortalSubmission> getAllPending(boolean seerOnly) {
         Logger.d("Get all pending portals");
-        return getAll(TABLE_PENDING, new PortalSubmissionBuilder(), seerOnly);
+        return getAll(STATUS_PENDING, new PortalSubmissionBuilder(), seerOnly);
     }
 
     /**
@@ -430,9 +716,35 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return all portals from the database
      */
     public Vector<PortalSubmission> getAllPortals(boolean seerOnly) {
-        Vector<PortalSubmission> portals = getAllPending(seerOnly);
-        portals.addAll(getAllAccepted(seerOnly));
-        portals.addAll(getAllRejected(seerOnly));
+        return getAllPortals(null, null, COLUMN_STATUS, seerOnly);
+    }
+
+    /**
+     * Get all portals from the database, sorted by the database
+     *
+     * @param sortOrder One of the PagedPortalList SORT constants
+     * @return all portals from the database in sortOrder
+     */
+    public Vector<PortalSubmission> getAllPortals(boolean seerOnly, int sortOrder) {
+        return getAllPortals(null, null, getListOrderBy(sortOrder, COLUMN_SORT_DATE), seerOnly);
+    }
+
+    /**
+     * Get all portals matching a selection with a single query.
+     *
+     * @param selection     WHERE claus
+     * @param selectionArgs Arguments for wildcards in selection
+     * @param orderBy       ORDER BY clause
+     * @return all portals which match the selection
+     */
+    private Vector<PortalSubmission> getAllPortals(String selection, String[] selectionArgs,
+            String orderBy, boolean seerOnly) {
+        Vector<PortalSubmission> portals = new Vector<>();
+        Cursor cursor = getDatabase().rawQuery(getListQuery(getSelection(selection, seerOnly)) +
+                " ORDER BY " + orderBy, selectionArgs);
+        while (cursor.moveToNext())
+            portals.add(buildPortal(cursor));
+        cursor.close();
         return portals;
     }
 
@@ -442,11 +754,8 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return all portals after date from the database
      */
     public Vector<PortalSubmission> getAllPortalsFromDate(LocalDate fromDate, boolean seerOnly) {
-        Vector<PortalSubmission> portals = new Vector<>();
-        portals.addAll(getPendingByDate(fromDate, seerOnly));
-        portals.addAll(getAcceptedByResponseDate(fromDate, seerOnly));
-        portals.addAll(getRejectedByResponseDate(fromDate, seerOnly));
-        return portals;
+        return getAllPortals(DATE_RANGE_SELECTION, getDateRangeArgs(fromDate, LocalDate.now()),
+                COLUMN_STATUS, seerOnly);
     }
 
     /**
@@ -456,37 +765,37 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public Vector<PortalRejected> getAllRejected(boolean seerOnly) {
         Logger.d("Get all rejected portals");
-        return getAll(TABLE_REJECTED, new PortalRejectedBuilder(), seerOnly);
+        return getAll(STATUS_REJECTED, new PortalRejectedBuilder(), seerOnly);
     }
 
     /**
-     * Get the number of portals in a table since fromDate
+     * Get the number of portals with a status since fromDate
      *
-     * @param table    Table in the database
+     * @param status   Status of the portals
      * @param dateKey  Either COLUMN_DATE_SUBMITTED or COLUMN_DATE_RESPONDED
      * @param fromDate Date to start searching from
-     * @return number of portals in a table since date
+     * @return number of portals with status since date
      */
-    private long getCountByDate(String table, String dateKey, LocalDate fromDate, boolean
+    private long getCountByDate(int status, String dateKey, LocalDate fromDate, boolean
             seerOnly) {
-        return getCountByDate(table, dateKey, fromDate, LocalDate.now(), seerOnly);
+        return getCountByDate(status, dateKey, fromDate, LocalDate.now(), seerOnly);
     }
 
     /**
-     * Get the number of portals in a table between fromDate and toDate
+     * Get the number of portals with a status between fromDate and toDate
      *
-     * @param table    Table in the database
+     * @param status   Status of the portals
      * @param dateKey  Either COLUMN_DATE_SUBMITTED or COLUMN_DATE_RESPONDED
      * @param fromDate Date to start searching from
      * @param toDate   Date to stop searching at
-     * @return number of portals in a table between fromDate and toDate
+     * @return number of portals with status between fromDate and toDate
      */
-    private long getCountByDate(String table, String dateKey, LocalDate fromDate,
+    private long getCountByDate(int status, String dateKey, LocalDate fromDate,
             LocalDate toDate, boolean seerOnly) {
-        String fromDateStr = DATE_FORMATTER.print(fromDate);
-        String toDateStr = DATE_FORMATTER.print(toDate);
+        String fromDateStr = String.valueOf(EpochDay.fromLocalDate(fromDate));
+        String toDateStr = String.valueOf(EpochDay.fromLocalDate(toDate));
 
-        return getEntryCount(table, dateKey + " BETWEEN ? AND ?",
+        return getEntryCount(getStatusSelection(status) + " AND " + dateKey + " BETWEEN ? AND ?",
                 new String[]{fromDateStr, toDateStr}, seerOnly);
     }
 
@@ -496,33 +805,83 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return the total number of portals in the database
      */
     public long getDatabaseSize(boolean seerOnly) {
-        return getAcceptedCount(seerOnly) + getPendingCount(seerOnly) + getRejectedCount(seerOnly);
+        return getEntryCount(null, null, seerOnly);
     }
 
     /**
-     * Safely get a String representation of date
+     * Get the arguments for DATE_RANGE_SELECTION
      *
-     * @param date A point in time
-     * @return String representation of date
+     * @param fromDate Date to start searching from
+     * @param toDate   Date to stop searching at
+     * @return arguments matching portals between fromDate and toDate
      */
-    private String getDateStringSafe(LocalDate date) {
-        return (date != null) ? DATE_FORMATTER.print(date) : "";
+    static private String[] getDateRangeArgs(LocalDate fromDate, LocalDate toDate) {
+        String fromDateStr = String.valueOf(EpochDay.fromLocalDate(fromDate));
+        String toDateStr = String.valueOf(EpochDay.fromLocalDate(toDate));
+        return new String[]{fromDateStr, toDateStr, fromDateStr, toDateStr};
     }
 
     /**
-     * Get the number of entries in a table
+     * Get the shared database connection, acquiring a reference to it on first use
      *
-     * @param table Table to count rows on
-     * @return number of entries in a table
+     * @return the shared connection to the application database
      */
-    private long getEntryCount(String table, String selection, String[] selectionArgs,
-            boolean seerOnly) {
-        SQLiteDatabase db = getReadableDatabase();
-        long count = DatabaseUtils.queryNumEntries(db, table, selection, selectionArgs);
-        db.close();
+    private synchronized SQLiteDatabase getDatabase() {
+        if (database == null)
+            database = DatabaseManager.getInstance(context).openDatabase();
+        return database;
+    }
+
+    /**
+     * Get the number of portals matching a selection
+     *
+     * @param selection     WHERE claus, or null to count every portal
+     * @param selectionArgs Arguments for wildcards in selection
+     * @return number of portals matching selection
+     */
+    private long getEntryCount(String selection, String[] selectionArgs, boolean seerOnly) {
+        SQLiteDatabase db = getDatabase();
+        long count = DatabaseUtils.queryNumEntries(db, TABLE_PORTALS,
+                getSelection(selection, seerOnly), selectionArgs);
         return count;
     }
 
+    /**
+     * Get the number of portals an email with this name and date has already been recorded as,
+     * without needing the picture URL in the body of the email. A submission email is recorded
+     * by any portal submitted that day, and a response by any accepted or rejected portal
+     * responded to that day.
+     *
+     * @param portalName Name of the portal from the email's subject
+     * @param emailDate  Date the email was delivered
+     * @param response   true if the email is a response to a submission
+     * @return number of portals in the database the email could have been recorded as
+     */
+    public long getRecordedCount(String portalName, LocalDate emailDate, boolean response) {
+        String selection = COLUMN_NAME + " = ? AND " + (response ? COLUMN_STATUS + " IN (" +
+                STATUS_ACCEPTED + ", " + STATUS_REJECTED + ") AND " + COLUMN_DATE_RESPONDED :
+                COLUMN_DATE_SUBMITTED) + " = ?";
+        return getEntryCount(selection, new String[]{portalName,
+                String.valueOf(EpochDay.fromLocalDate(emailDate))}, false);
+    }
+
+    /**
+     * Get the cached catalog of mail folders in the user's account
+     *
+     * @return full name of each folder mapped to its UIDVALIDITY, or to null if the folder hasn't
+     * been opened. Empty if the folders have never been listed.
+     */
+    public Map<String, Long> getFolderCatalog() {
+        Cursor cursor = getDatabase().query(FolderEntry.TABLE_FOLDERS,
+                new String[]{FolderEntry.COLUMN_FOLDER, FolderEntry.COLUMN_UID_VALIDITY}, null,
+                null, null, null, "rowid");
+        Map<String, Long> catalog = new LinkedHashMap<>();
+        while (cursor.moveToNext())
+            catalog.put(cursor.getString(0), cursor.isNull(1) ? null : cursor.getLong(1));
+        cursor.close();
+        return catalog;
+    }
+
     /**
      * Get all pending portal submissions which were submitted between fromDate and toDate
      *
@@ -533,7 +892,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
     public Vector<PortalSubmission> getPendingByDate(LocalDate fromDate, LocalDate toDate,
             boolean seerOnly) {
         Logger.d("Getting all pending portals in a date range");
-        return getPortalsByDate(TABLE_PENDING, COLUMN_DATE_SUBMITTED, fromDate, toDate,
+        return getPortalsByDate(STATUS_PENDING, COLUMN_DATE_SUBMITTED, fromDate, toDate,
                 new PortalSubmissionBuilder(), seerOnly);
     }
 
@@ -553,7 +912,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of pending portals
      */
     public long getPendingCount(boolean seerOnly) {
-        return getEntryCount(TABLE_PENDING, null, null, seerOnly);
+        return getEntryCount(getStatusSelection(STATUS_PENDING), null, seerOnly);
     }
 
     /**
@@ -563,7 +922,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of portals that were submitted since fromDate
      */
     public long getPendingCountByDate(LocalDate fromDate, boolean seerOnly) {
-        return getCountByDate(TABLE_PENDING, COLUMN_DATE_SUBMITTED, fromDate, seerOnly);
+        return getCountByDate(STATUS_PENDING, COLUMN_DATE_SUBMITTED, fromDate, seerOnly);
     }
 
     /**
@@ -574,7 +933,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of portals that were submitted between fromDate and toDate
      */
     public long getPendingCountByDate(LocalDate fromDate, LocalDate toDate, boolean seerOnly) {
-        return getCountByDate(TABLE_PENDING, COLUMN_DATE_SUBMITTED, fromDate, toDate, seerOnly);
+        return getCountByDate(STATUS_PENDING, COLUMN_DATE_SUBMITTED, fromDate, toDate, seerOnly);
     }
 
     /**
@@ -586,34 +945,132 @@ public class DatabaseInterface extends SQLiteOpenHelper {
     public PortalSubmission getPendingPortal(String pictureURL, String portalName, boolean
             seerOnly) {
         Logger.d("Getting pending portal");
-        return getPortal(TABLE_PENDING, pictureURL, portalName, new PortalSubmissionBuilder(),
+        return getPortal(STATUS_PENDING, pictureURL, portalName, new PortalSubmissionBuilder(),
                 seerOnly);
     }
 
     /**
-     * @param table      Database table to search
+     * Get a list of portals which loads the portals from the database as they're needed.
+     *
+     * @param type      "all", "accepted", "pending", or "rejected"
+     * @param fromDate  Only include portals responded to, or submitted if pending, since fromDate.
+     *                  If null all portals are included.
+     * @param sortOrder One of the PagedPortalList SORT constants
+     * @return list of the portals matching type and fromDate
+     * @see #getPortalList(String, LocalDate, int, boolean, int, int)
+     */
+    public PagedPortalList getPortalList(String type, LocalDate fromDate, int sortOrder,
+            boolean seerOnly) {
+        return getPortalList(type, fromDate, sortOrder, seerOnly,
+                PagedPortalList.DEFAULT_PAGE_SIZE, PagedPortalList.DEFAULT_PREFETCH_DISTANCE);
+    }
+
+    /**
+     * Get a list of portals which loads the portals from the database as they're needed. Since
+     * this counts the matching portals it shouldn't be called from the UI thread.
+     *
+     * @param type             "all", "accepted", "pending", or "rejected"
+     * @param fromDate         Only include portals responded to, or submitted if pending, since
+     *                         fromDate. If null all portals are included.
+     * @param sortOrder        One of the PagedPortalList SORT constants
+     * @param pageSize         Number of portals loaded from the database at once
+     * @param prefetchDistance Distance from the end of a page at which the next page is loaded
+     * @return list of the portals matching type and fromDate
+     */
+    public PagedPortalList getPortalList(String type, LocalDate fromDate, int sortOrder,
+            boolean seerOnly, int pageSize, int prefetchDistance) {
+        String selection;
+        String[] args;
+        String sortDate = COLUMN_SORT_DATE;
+        if (TYPE_ALL.equals(type)) {
+            selection = fromDate == null ? null : DATE_RANGE_SELECTION;
+            args = fromDate == null ? null : getDateRangeArgs(fromDate, LocalDate.now());
+        } else {
+            int status = TYPE_ACCEPTED.equals(type) ? STATUS_ACCEPTED :
+                    TYPE_REJECTED.equals(type) ? STATUS_REJECTED : STATUS_PENDING;
+            selection = getStatusSelection(status);
+            args = null;
+            // Sort on the column itself so the (status, date, name) indexes can be used
+            sortDate = status == STATUS_PENDING ? COLUMN_DATE_SUBMITTED : COLUMN_DATE_RESPONDED;
+            if (fromDate != null) {
+                selection += " AND " + sortDate + " BETWEEN ? AND ?";
+                args = new String[]{String.valueOf(EpochDay.fromLocalDate(fromDate)),
+                        String.valueOf(EpochDay.fromLocalDate(LocalDate.now()))};
+            }
+        }
+
+        return new PagedPortalList(this, getListQuery(getSelection(selection, seerOnly)),
+                args == null ? new String[0] : args, getListOrderBy(sortOrder, sortDate), pageSize,
+                prefetchDistance);
+    }
+
+    /**
+     * @param selection WHERE clause, or null to select every portal
+     * @return query selecting every column of the portals matching selection, their rowid, and
+     * their sort date
+     */
+    static private String getListQuery(String selection) {
+        return "SELECT rowid AS " + _ID + ", " + COLUMN_STATUS + ", " + COLUMN_NAME + ", " +
+                COLUMN_DATE_SUBMITTED + ", " + COLUMN_PICTURE_URL + ", " + COLUMN_DATE_RESPONDED +
+                ", " + COLUMN_LIVE_ADDRESS + ", " + COLUMN_INTEL_LINK_URL + ", " +
+                COLUMN_REJECTION_REASON + ", " + SELECT_SORT_DATE + " AS " + COLUMN_SORT_DATE +
+                " FROM " + TABLE_PORTALS + (selection == null ? "" : " WHERE " + selection);
+    }
+
+    /**
+     * Get the ORDER BY clause for a list query. Descending orders reverse the name too, so every
+     * order matches one of the indexes read forwards or backwards.
+     *
+     * @param sortOrder One of the PagedPortalList SORT constants
+     * @param sortDate  Column sorted on when sorting by response date
+     * @return ORDER BY clause for a list query
+     */
+    static private String getListOrderBy(int sortOrder, String sortDate) {
+        switch (sortOrder) {
+        case PagedPortalList.SORT_RESPONSE_DATE_DESC:
+            return sortDate + " DESC, " + COLUMN_NAME + " DESC";
+        case PagedPortalList.SORT_SUBMISSION_DATE:
+            return COLUMN_DATE_SUBMITTED + ", " + COLUMN_NAME;
+        case PagedPortalList.SORT_SUBMISSION_DATE_DESC:
+            return COLUMN_DATE_SUBMITTED + " DESC, " + COLUMN_NAME + " DESC";
+        case PagedPortalList.SORT_NAME:
+            return COLUMN_NAME;
+        case PagedPortalList.SORT_NAME_DESC:
+            return COLUMN_NAME + " DESC";
+        default:
+            return sortDate + ", " + COLUMN_NAME;
+        }
+    }
+
+    /**
+     * @param status     Status of the portal
      * @param pictureURL Unique key for a portal in the database
+     * @param portalName Name of the portal, used to find it if it has no picture URL
      * @param builder    PortalBuilder to build the portal from the query
      * @param <P>        Type of PortalSubmission being returned
      * @return a portal from the database
      */
-    private <P extends PortalSubmission> P getPortal(String table, String pictureURL,
+    private <P extends PortalSubmission> P getPortal(int status, String pictureURL,
             String portalName, PortalBuilder<P> builder, boolean seerOnly) {
-        Vector<P> portals = getAll(table, COLUMN_PICTURE_URL + " = ? ", new String[]{pictureURL},
-                builder, seerOnly);
-
-        if (pictureURL == null || pictureURL.equalsIgnoreCase(""))
-            for (P portal : portals) {
-                Logger.v("DBI", "Looking for: " + portalName + " found " + portal.getName());
-                if (portal.getName().equals(portalName))
-                    return portal;
-            }
-        else if (portals.size() > 0)
+        Vector<P> portals = getAll(getStatusSelection(status) + " AND " + MATCH_PORTAL,
+                getMatchArgs(pictureURL, portalName), builder, seerOnly);
+        if (portals.size() > 0)
             return portals.get(0);
         Logger.d("Returning null for url: " + pictureURL + " - " + portalName);
         return null;
     }
 
+    /**
+     * Get the arguments for MATCH_PORTAL
+     *
+     * @param pictureURL URL of the portal picture, may be null
+     * @param portalName Name of the portal
+     * @return arguments matching the portal
+     */
+    static private String[] getMatchArgs(String pictureURL, String portalName) {
+        return new String[]{pictureURL == null ? "" : pictureURL, String.valueOf(portalName)};
+    }
+
     /**
      * Get all portals in a range of dates.
      *
@@ -623,16 +1080,67 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @param toDate   Date to stop searching at
      * @return Vector of portals which were either submitted or approved from fromDate to
      * toDate.
-     * @see PendingPortalContract.PendingPortalEntry#COLUMN_DATE_RESPONDED
-     * @see PendingPortalContract.PendingPortalEntry#COLUMN_DATE_SUBMITTED
+     * @see PortalContract.PortalEntry#COLUMN_DATE_RESPONDED
+     * @see PortalContract.PortalEntry#COLUMN_DATE_SUBMITTED
      */
-    private <P extends PortalSubmission> Vector<P> getPortalsByDate(String table, String dateKey,
+    private <P extends PortalSubmission> Vector<P> getPortalsByDate(int status, String dateKey,
             LocalDate fromDate, LocalDate toDate,
             PortalBuilder<P> builder, boolean seerOnly) {
-        String fromDateStr = DATE_FORMATTER.print(fromDate);
-        String toDateStr = DATE_FORMATTER.print(toDate);
-        return getAll(table, dateKey + " BETWEEN ? AND ?", new String[]{fromDateStr, toDateStr},
-                builder, seerOnly);
+        String fromDateStr = String.valueOf(EpochDay.fromLocalDate(fromDate));
+        String toDateStr = String.valueOf(EpochDay.fromLocalDate(toDate));
+        return getAll(getStatusSelection(status) + " AND " + dateKey + " BETWEEN ? AND ?",
+                new String[]{fromDateStr, toDateStr}, builder, seerOnly);
+    }
+
+    /**
+     * Build a WHERE clause matching the rows of a list query whose name, live address, or
+     * rejection reason contain words starting with each word in text. The words are quoted so
+     * nothing the user types is treated as a search operator.
+     *
+     * @return WHERE clause taking the search expression as its only argument
+     * @see #getSearchExpression(String)
+     */
+    static String getSearchSelection() {
+        return _ID + " IN (SELECT docid FROM " + TABLE_SEARCH + " WHERE " + TABLE_SEARCH +
+                " MATCH ?)";
+    }
+
+    /**
+     * Turn text typed by the user into a full text prefix query
+     *
+     * @param text Text the user is searching for
+     * @return search expression for getSearchSelection, or null if text doesn't contain any words
+     */
+    static String getSearchExpression(String text) {
+        StringBuilder expression = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty())
+                continue;
+            if (expression.length() > 0)
+                expression.append(' ');
+            expression.append('"').append(word).append("*\"");
+        }
+        return expression.length() == 0 ? null : expression.toString();
+    }
+
+    /**
+     * Add the seer filter to a WHERE clause if it's enabled
+     *
+     * @param selection WHERE clause, or null to select every portal
+     * @return selection, limited to portals which count towards the seer badge if seerOnly is set
+     */
+    static private String getSelection(String selection, boolean seerOnly) {
+        if (!seerOnly)
+            return selection;
+        return selection == null ? SEER_SELECTION : "(" + selection + ") AND " + SEER_SELECTION;
+    }
+
+    /**
+     * @param status Status of the portals
+     * @return WHERE clause matching portals with status
+     */
+    static private String getStatusSelection(int status) {
+        return COLUMN_STATUS + " = " + status;
     }
 
     /**
@@ -648,7 +1156,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
     private Vector<PortalRejected> getRejectedByDate(String dateKey, LocalDate fromDate,
             LocalDate toDate, boolean seerOnly) {
         Logger.d("Getting all rejected portals within date range");
-        return getPortalsByDate(TABLE_REJECTED, dateKey, fromDate, toDate, new
+        return getPortalsByDate(STATUS_REJECTED, dateKey, fromDate, toDate, new
                 PortalRejectedBuilder(), seerOnly);
     }
 
@@ -703,7 +1211,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of rejected portals
      */
     public long getRejectedCount(boolean seerOnly) {
-        return getEntryCount(TABLE_REJECTED, null, null, seerOnly);
+        return getEntryCount(getStatusSelection(STATUS_REJECTED), null, seerOnly);
     }
 
     /**
@@ -713,7 +1221,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of portals that were rejected since fromDate
      */
     public long getRejectedCountByResponseDate(LocalDate fromDate, boolean seerOnly) {
-        return getCountByDate(TABLE_REJECTED, COLUMN_DATE_RESPONDED, fromDate, seerOnly);
+        return getCountByDate(STATUS_REJECTED, COLUMN_DATE_RESPONDED, fromDate, seerOnly);
     }
 
     /**
@@ -725,7 +1233,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public long getRejectedCountByResponseDate(LocalDate fromDate, LocalDate toDate, boolean
             seerOnly) {
-        return getCountByDate(TABLE_REJECTED, COLUMN_DATE_RESPONDED, fromDate, toDate, seerOnly);
+        return getCountByDate(STATUS_REJECTED, COLUMN_DATE_RESPONDED, fromDate, toDate, seerOnly);
     }
 
     /**
@@ -735,7 +1243,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @return number of rejected portals that were submitted since fromDate
      */
     public long getRejectedCountBySubmissionDate(LocalDate fromDate, boolean seerOnly) {
-        return getCountByDate(TABLE_REJECTED, COLUMN_DATE_SUBMITTED, fromDate, seerOnly);
+        return getCountByDate(STATUS_REJECTED, COLUMN_DATE_SUBMITTED, fromDate, seerOnly);
     }
 
     /**
@@ -747,7 +1255,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      */
     public long getRejectedCountBySubmissionDate(LocalDate fromDate, LocalDate toDate, boolean
             seerOnly) {
-        return getCountByDate(TABLE_REJECTED, COLUMN_DATE_SUBMITTED, fromDate, toDate, seerOnly);
+        return getCountByDate(STATUS_REJECTED, COLUMN_DATE_SUBMITTED, fromDate, toDate, seerOnly);
     }
 
     /**
@@ -759,64 +1267,209 @@ public class DatabaseInterface extends SQLiteOpenHelper {
     public PortalRejected getRejectedPortal(String pictureURL, String portalName, boolean
             seerOnly) {
         Logger.d("Getting rejected portal");
-        return getPortal(TABLE_REJECTED, pictureURL, portalName, new PortalRejectedBuilder(),
+        return getPortal(STATUS_REJECTED, pictureURL, portalName, new PortalRejectedBuilder(),
                 seerOnly);
     }
 
     /**
-     * Create tables in the database
+     * Get the number of accepted, pending, and rejected portals for every range shown on the
+     * dashboard with a single query.
      *
-     * @param db A reference to the SQLiteDatabase object used by the app
+     * @return counts for today, the last week, the last month, and all time
      */
-    @Override
-    public void onCreate(SQLiteDatabase db) {
-        db.execSQL(PendingPortalContract.SQL_CREATE_ENTRIES);
-        db.execSQL(AcceptedPortalContract.SQL_CREATE_ENTRIES);
-        db.execSQL(RejectedPortalContract.SQL_CREATE_ENTRIES);
+    public PortalSummary getSummary(boolean seerOnly) {
+        LocalDate today = LocalDate.now();
+        String[] args = new String[]{String.valueOf(EpochDay.fromLocalDate(today)),
+                String.valueOf(EpochDay.fromLocalDate(today.minusDays(7))),
+                String.valueOf(EpochDay.fromLocalDate(today.minusMonths(1)))};
+        // rawQuery binds the dates as TEXT and COALESCE has no affinity to convert them, so they
+        // have to be cast back to INTEGER before they're compared
+        String todayArg = "CAST(?1 AS INTEGER)";
+        String query = "SELECT " + COLUMN_STATUS + ", " +
+                "COUNT(CASE WHEN " + SELECT_SORT_DATE + " = " + todayArg + " THEN 1 END), " +
+                "COUNT(CASE WHEN " + SELECT_SORT_DATE + " BETWEEN CAST(?2 AS INTEGER) AND " +
+                todayArg + " THEN 1 END), " +
+                "COUNT(CASE WHEN " + SELECT_SORT_DATE + " BETWEEN CAST(?3 AS INTEGER) AND " +
+                todayArg + " THEN 1 END), " +
+                "COUNT(*) FROM " + TABLE_PORTALS + (seerOnly ? " WHERE " + SEER_SELECTION : "") +
+                " GROUP BY " + COLUMN_STATUS;
+        long[] accepted = new long[PortalSummary.RANGE_COUNT];
+        long[] pending = new long[PortalSummary.RANGE_COUNT];
+        long[] rejected = new long[PortalSummary.RANGE_COUNT];
+
+        Cursor cursor = getDatabase().rawQuery(query, args);
+        while (cursor.moveToNext()) {
+            int status = cursor.getInt(0);
+            long[] counts = status == STATUS_ACCEPTED ? accepted :
+                    status == STATUS_PENDING ? pending : rejected;
+            for (int i = 0; i < PortalSummary.RANGE_COUNT; ++i)
+                counts[i] = cursor.getLong(i + 1);
+        }
+        cursor.close();
+        return new PortalSummary(accepted, pending, rejected);
     }
 
     /**
-     * Delete the old tables from the database and create the new tables
+     * Get how far a mail folder has been synced
      *
-     * @param db         A reference to the SQLiteDatabase object used by the app
-     * @param oldVersion The current version of the database
-     * @param newVersion The new version of the database
+     * @param folder Full name of the mail folder
+     * @return the folder's sync state, or null if it has never been synced
      */
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Drop tables
-        db.execSQL(AcceptedPortalContract.SQL_DELETE_ENTRIES);
-        db.execSQL(PendingPortalContract.SQL_DELETE_ENTRIES);
-        db.execSQL(RejectedPortalContract.SQL_DELETE_ENTRIES);
-        // Create tables
-        db.execSQL(PendingPortalContract.SQL_CREATE_ENTRIES);
-        db.execSQL(AcceptedPortalContract.SQL_CREATE_ENTRIES);
-        db.execSQL(RejectedPortalContract.SQL_CREATE_ENTRIES);
+    public SyncState getSyncState(String folder) {
+        Cursor cursor = getDatabase().query(TABLE_SYNC_STATE,
+                new String[]{COLUMN_UID_VALIDITY, COLUMN_LAST_UID, COLUMN_BACKFILL_UID},
+                COLUMN_FOLDER + " = ?", new String[]{folder}, null, null, null);
+        SyncState state = null;
+        if (cursor.moveToFirst())
+            state = new SyncState(folder, cursor.getLong(0), cursor.getLong(1),
+                    cursor.getLong(2));
+        cursor.close();
+        return state;
     }
 
     /**
-     * Update a database entry for an accepted portal
+     * Get how far a full resync or history backfill of a mail folder has got
      *
-     * @param portal    PortalAccepted containing the new information
-     * @param oldPortal PortalAccepted containing the old information to be updated
+     * @param folder      Full name of the mail folder
+     * @param uidValidity UIDVALIDITY of the folder being resynced
+     * @return the day every email before has been parsed, or null if no window has been written
+     * yet
      */
-    public void updateAccepted(PortalAccepted portal, PortalAccepted oldPortal) {
-        Logger.d("Update portal: " + oldPortal.getName());
-        SQLiteDatabase db = getWritableDatabase();
+    public LocalDate getWindowProgress(String folder, long uidValidity) {
+        Cursor cursor = getDatabase().query(WindowEntry.TABLE_WINDOW_PROGRESS,
+                new String[]{WindowEntry.COLUMN_PARSED_BEFORE}, WindowEntry.COLUMN_FOLDER +
+                        " = ? AND " + WindowEntry.COLUMN_UID_VALIDITY + " = ?",
+                new String[]{folder, String.valueOf(uidValidity)}, null, null, null);
+        LocalDate parsedBefore = null;
+        if (cursor.moveToFirst())
+            parsedBefore = EpochDay.toLocalDate(cursor.getLong(0));
+        cursor.close();
+        return parsedBefore;
+    }
+
+    /**
+     * Replace the cached catalog of mail folders. The UIDVALIDITY of folders which are still in
+     * the account is kept.
+     *
+     * @param folders Full name of each folder in the account, in the order the server listed them
+     */
+    public void setFolderCatalog(List<String> folders) {
+        Map<String, Long> oldCatalog = getFolderCatalog();
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(FolderEntry.TABLE_FOLDERS, null, null);
+            ContentValues values = new ContentValues();
+            for (String folder : folders) {
+                values.clear();
+                values.put(FolderEntry.COLUMN_FOLDER, folder);
+                values.put(FolderEntry.COLUMN_UID_VALIDITY, oldCatalog.get(folder));
+                db.insertWithOnConflict(FolderEntry.TABLE_FOLDERS, null, values,
+                        SQLiteDatabase.CONFLICT_IGNORE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Record the UIDVALIDITY of a mail folder in the folder catalog
+     *
+     * @param folder      Full name of the folder
+     * @param uidValidity UIDVALIDITY the folder was opened with
+     */
+    public void setFolderUidValidity(String folder, long uidValidity) {
         ContentValues values = new ContentValues();
-        String dateSubmitted = DATE_FORMATTER.print(portal.getDateSubmitted());
-        String dateResponded = DATE_FORMATTER.print(portal.getDateResponded());
+        values.put(FolderEntry.COLUMN_UID_VALIDITY, uidValidity);
+        getDatabase().update(FolderEntry.TABLE_FOLDERS, values, FolderEntry.COLUMN_FOLDER + " = ?",
+                new String[]{folder});
+    }
+
+    /**
+     * Record how far a mail folder has been synced. While the folder's UIDVALIDITY stays the same
+     * only the last UID is updated, and never lowered, so the background history backfill keeps
+     * its own progress and a sync which finishes after a newer one can't undo it. Otherwise the
+     * previous sync state is replaced and the progress of the full resync which produced it is
+     * forgotten. Both happen in one transaction, so another sync can't write in between.
+     *
+     * @param state New sync state of the folder
+     */
+    public void setSyncState(SyncState state) {
+        SQLiteDatabase db = getDatabase();
+        db.beginTransaction();
+        try {
+            SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_SYNC_STATE + " SET " +
+                    COLUMN_LAST_UID + " = MAX(" + COLUMN_LAST_UID + ", ?) WHERE " +
+                    COLUMN_FOLDER + " = ? AND " + COLUMN_UID_VALIDITY + " = ?");
+            update.bindLong(1, state.getLastUid());
+            update.bindString(2, state.getFolder());
+            update.bindLong(3, state.getUidValidity());
+            int updated = update.executeUpdateDelete();
+            update.close();
+            if (updated == 0) {
+                ContentValues values = new ContentValues();
+                values.put(COLUMN_LAST_UID, state.getLastUid());
+                values.put(COLUMN_FOLDER, state.getFolder());
+                values.put(COLUMN_UID_VALIDITY, state.getUidValidity());
+                values.put(COLUMN_BACKFILL_UID, state.getBackfillUid());
+                db.insertWithOnConflict(TABLE_SYNC_STATE, null, values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+                db.delete(WindowEntry.TABLE_WINDOW_PROGRESS, WindowEntry.COLUMN_FOLDER + " = ?",
+                        new String[]{state.getFolder()});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
 
+    /**
+     * Update a portal in place with a single UPDATE, including changing its status. If the new
+     * portal has no date submitted the one in the database is kept, and the response fields which
+     * don't apply to the new status are cleared.
+     *
+     * @param portal    Portal containing the new information
+     * @param oldPortal Portal containing the old information to be updated
+     * @return true if the portal was updated, otherwise false
+     */
+    public boolean update(PortalSubmission portal, PortalSubmission oldPortal) {
+        Logger.d("Update portal: " + oldPortal.getName());
+        ContentValues values = new ContentValues();
         values.put(COLUMN_NAME, portal.getName());
-        values.put(COLUMN_DATE_SUBMITTED, dateSubmitted);
         values.put(COLUMN_PICTURE_URL, portal.getPictureURL());
-        values.put(COLUMN_DATE_RESPONDED, dateResponded);
-        values.put(COLUMN_LIVE_ADDRESS, portal.getLiveAddress());
-        values.put(COLUMN_INTEL_LINK_URL, portal.getIntelLinkURL());
+        values.put(COLUMN_STATUS, getStatus(portal));
+        if (portal.getDateSubmitted() != null)
+            values.put(COLUMN_DATE_SUBMITTED, EpochDay.fromLocalDate(portal.getDateSubmitted()));
+        values.putNull(COLUMN_DATE_RESPONDED);
+        values.putNull(COLUMN_LIVE_ADDRESS);
+        values.putNull(COLUMN_INTEL_LINK_URL);
+        values.putNull(COLUMN_REJECTION_REASON);
+        if (portal instanceof PortalAccepted) {
+            PortalAccepted accepted = (PortalAccepted) portal;
+            values.put(COLUMN_DATE_RESPONDED,
+                    EpochDay.fromLocalDateSafe(accepted.getDateResponded()));
+            values.put(COLUMN_LIVE_ADDRESS, accepted.getLiveAddress());
+            values.put(COLUMN_INTEL_LINK_URL, accepted.getIntelLinkURL());
+        } else if (portal instanceof PortalRejected) {
+            PortalRejected rejected = (PortalRejected) portal;
+            values.put(COLUMN_DATE_RESPONDED,
+                    EpochDay.fromLocalDateSafe(rejected.getDateResponded()));
+            values.put(COLUMN_REJECTION_REASON, rejected.getRejectionReason());
+        }
+        String selection = getStatusSelection(getStatus(oldPortal)) + " AND " + MATCH_PORTAL;
+        return getDatabase().update(TABLE_PORTALS, values, selection,
+                getMatchArgs(oldPortal.getPictureURL(), oldPortal.getName())) > 0;
+    }
 
-        db.update(TABLE_ACCEPTED, values, COLUMN_PICTURE_URL + " = ?",
-                new String[]{String.valueOf(oldPortal.getPictureURL())});
-        db.close();
+    /**
+     * Update a database entry for an accepted portal
+     *
+     * @param portal    PortalAccepted containing the new information
+     * @param oldPortal PortalAccepted containing the old information to be updated
+     */
+    public void updateAccepted(PortalAccepted portal, PortalAccepted oldPortal) {
+        update(portal, oldPortal);
     }
 
     /**
@@ -826,17 +1479,7 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @param oldPortal PortalSubmission containing the old information to be updated
      */
     public void updatePending(PortalSubmission portal, PortalSubmission oldPortal) {
-        Logger.d("Update portal: " + oldPortal.getName());
-        SQLiteDatabase db = getWritableDatabase();
-        ContentValues values = new ContentValues();
-
-        values.put(COLUMN_NAME, portal.getName());
-        values.put(COLUMN_DATE_SUBMITTED, DATE_FORMATTER.print(portal.getDateSubmitted()));
-        values.put(COLUMN_PICTURE_URL, portal.getPictureURL());
-
-        db.update(TABLE_PENDING, values, COLUMN_PICTURE_URL + " = ?",
-                new String[]{String.valueOf(oldPortal.getPictureURL())});
-        db.close();
+        update(portal, oldPortal);
     }
 
     /**
@@ -846,20 +1489,6 @@ public class DatabaseInterface extends SQLiteOpenHelper {
      * @param oldPortal PortalRejected containing the old information to be updated
      */
     public void updateRejected(PortalRejected portal, PortalRejected oldPortal) {
-        Logger.d("Update portal: " + oldPortal.getName());
-        SQLiteDatabase db = getWritableDatabase();
-        ContentValues values = new ContentValues();
-        String dateSubmitted = DATE_FORMATTER.print(portal.getDateSubmitted());
-        String dateResponded = DATE_FORMATTER.print(portal.getDateResponded());
-
-        values.put(COLUMN_NAME, portal.getName());
-        values.put(COLUMN_DATE_SUBMITTED, dateSubmitted);
-        values.put(COLUMN_PICTURE_URL, portal.getPictureURL());
-        values.put(COLUMN_DATE_RESPONDED, dateResponded);
-        values.put(COLUMN_REJECTION_REASON, portal.getRejectionReason());
-
-        db.update(TABLE_REJECTED, values, COLUMN_PICTURE_URL + " = ?",
-                new String[]{String.valueOf(oldPortal.getPictureURL())});
-        db.close();
+        update(portal, oldPortal);
     }
 }
@@ -0,0 +1,101 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.einzig.ipst2.util.Logger;
+
+/**
+ * Hands out a single, long lived connection to the application database.
+ *
+ * Opening and closing the database for every query is expensive, and closing it from one thread
+ * while another is still using it crashes the app. Instead every user acquires the shared
+ * connection with {@link #openDatabase()} and gives it back with {@link #closeDatabase()}. The
+ * connection is only really closed once nobody holds it any more, which normally means never since
+ * {@link com.einzig.ipst2.CheckoutApplication} holds a reference for the life of the process.
+ */
+public class DatabaseManager {
+    /** The only instance of DatabaseManager */
+    static private DatabaseManager instance;
+
+    /** Helper which creates and upgrades the database */
+    final private DatabaseHelper helper;
+    /** Number of references to the shared connection currently held */
+    private int openCount;
+    /** The shared connection, null while nobody holds a reference */
+    private SQLiteDatabase database;
+
+    /**
+     * @param context Application context used to open the database
+     */
+    private DatabaseManager(Context context) {
+        helper = new DatabaseHelper(context);
+        openCount = 0;
+        database = null;
+    }
+
+    /**
+     * Get the DatabaseManager for the application, creating it if it doesn't exist yet.
+     *
+     * @param context Any context from the application
+     * @return the DatabaseManager for the application
+     */
+    static public synchronized DatabaseManager getInstance(Context context) {
+        if (instance == null)
+            instance = new DatabaseManager(context.getApplicationContext());
+        return instance;
+    }
+
+    /**
+     * Release a reference to the shared connection, closing it if it was the last one.
+     */
+    public synchronized void closeDatabase() {
+        if (openCount == 0) {
+            Logger.w("DatabaseManager#closeDatabase", "Database closed more times than opened");
+            return;
+        }
+        --openCount;
+        if (openCount == 0) {
+            Logger.d("Closing database");
+            database.close();
+            database = null;
+        }
+    }
+
+    /**
+     * Acquire a reference to the shared connection, opening it if necessary. Every call must be
+     * matched by a call to {@link #closeDatabase()}.
+     *
+     * @return the shared connection to the application database
+     */
+    public synchronized SQLiteDatabase openDatabase() {
+        if (openCount == 0) {
+            Logger.d("Opening database");
+            database = helper.getWritableDatabase();
+        }
+        ++openCount;
+        return database;
+    }
+}
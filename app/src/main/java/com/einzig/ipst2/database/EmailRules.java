@@ -0,0 +1,230 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+import android.content.Context;
+
+import com.einzig.ipst2.R;
+import com.einzig.ipst2.util.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_ACCEPTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_PENDING;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_REJECTED;
+
+/**
+ * Table of phrases used to classify portal emails and to find why a portal was rejected, loaded
+ * from res/raw/email_rules.txt. New email templates only need new rules in the table.
+ * <p>
+ * The phrases of each scope are compiled into a single {@link KeywordAutomaton}, so a subject or
+ * body is scanned once no matter how many rules there are.
+ * </p>
+ */
+public final class EmailRules {
+    /** Status returned when no status rule matches */
+    static final public int STATUS_UNKNOWN = -1;
+    /** Rule which adds its value to the reason a portal was rejected */
+    static final private String RULE_ALSO = "also";
+    /** Rule which gives the reason a portal was rejected */
+    static final private String RULE_REASON = "reason";
+    /** Rule which gives the status of the portal */
+    static final private String RULE_STATUS = "status";
+    /** Rules matched against the email body */
+    static final private String SCOPE_BODY = "body";
+    /** Rules matched against the email subject in lower case */
+    static final private String SCOPE_SUBJECT = "subject";
+
+    /** Finds the phrases of bodyRules */
+    final private KeywordAutomaton bodyKeywords;
+    /** Rules matched against the email body, in the order they're listed */
+    final private List<Rule> bodyRules;
+    /** Finds the phrases of subjectRules */
+    final private KeywordAutomaton subjectKeywords;
+    /** Rules matched against the email subject, in the order they're listed */
+    final private List<Rule> subjectRules;
+
+    /**
+     * Read a rule table
+     *
+     * @param reader Reader over the rule table
+     * @throws IOException if the table can't be read
+     */
+    EmailRules(BufferedReader reader) throws IOException {
+        List<String> bodyPhrases = new ArrayList<>();
+        List<String> subjectPhrases = new ArrayList<>();
+        bodyRules = new ArrayList<>();
+        subjectRules = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] fields = line.split("\t", 4);
+            Rule rule = fields.length == 4 ? Rule.create(fields[1], fields[2]) : null;
+            if (rule == null || fields[3].isEmpty()) {
+                Logger.e("Invalid email rule: " + line);
+            } else if (fields[0].equals(SCOPE_BODY)) {
+                bodyRules.add(rule);
+                bodyPhrases.add(fields[3]);
+            } else if (fields[0].equals(SCOPE_SUBJECT)) {
+                subjectRules.add(rule);
+                subjectPhrases.add(fields[3]);
+            } else {
+                Logger.e("Invalid email rule: " + line);
+            }
+        }
+        bodyKeywords = new KeywordAutomaton(bodyPhrases);
+        subjectKeywords = new KeywordAutomaton(subjectPhrases);
+    }
+
+    /**
+     * Load the rules bundled with the app
+     *
+     * @param context Context used to open the resource
+     * @return rules from res/raw/email_rules.txt
+     */
+    static public EmailRules load(Context context) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                context.getResources().openRawResource(R.raw.email_rules)));
+        try {
+            return new EmailRules(reader);
+        } catch (IOException e) {
+            // The table is part of the app, so this only happens if the APK is broken
+            throw new IllegalStateException("Unable to read email rules", e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                Logger.e(e.toString());
+            }
+        }
+    }
+
+    /**
+     * Classify an email from its subject
+     *
+     * @param subject Email subject line in lower case
+     * @return status of the first status rule the subject matches, or STATUS_UNKNOWN if it
+     * matches none and the email has to be classified from its body
+     */
+    public int classifySubject(String subject) {
+        return getStatus(subjectRules, subjectKeywords.scan(subject));
+    }
+
+    /**
+     * @return automaton which finds the phrases of the body rules
+     */
+    KeywordAutomaton getBodyKeywords() {
+        return bodyKeywords;
+    }
+
+    /**
+     * Get the reason a portal was rejected. The first reason rule which matches gives the reason,
+     * and every also rule which matches is added to it.
+     *
+     * @param found Which body phrases the email contains
+     * @return reason the portal was rejected, or null if no rule matches
+     */
+    String getRejectionReason(boolean[] found) {
+        String reason = null;
+        List<String> extra = new ArrayList<>();
+        for (int i = 0; i < bodyRules.size(); ++i) {
+            Rule rule = bodyRules.get(i);
+            if (!found[i])
+                continue;
+            if (rule.kind.equals(RULE_REASON) && reason == null)
+                reason = rule.value;
+            else if (rule.kind.equals(RULE_ALSO))
+                extra.add(rule.value);
+        }
+        for (String value : extra)
+            reason = reason == null ? value : reason + " or " + value.toLowerCase();
+        return reason;
+    }
+
+    /**
+     * Get the status of an email from its body
+     *
+     * @param found Which body phrases the email contains
+     * @return status of the first status rule which matches, or STATUS_UNKNOWN
+     */
+    int getStatus(boolean[] found) {
+        return getStatus(bodyRules, found);
+    }
+
+    /**
+     * @param rules Rules of one scope
+     * @param found Which of the rules' phrases were found
+     * @return status of the first status rule which matches, or STATUS_UNKNOWN
+     */
+    static private int getStatus(List<Rule> rules, boolean[] found) {
+        for (int i = 0; i < rules.size(); ++i) {
+            if (found[i] && rules.get(i).kind.equals(RULE_STATUS))
+                return rules.get(i).status;
+        }
+        return STATUS_UNKNOWN;
+    }
+
+    /**
+     * One line of the rule table, without its phrase
+     */
+    static private class Rule {
+        /** One of the RULE constants */
+        final private String kind;
+        /** Status given by a status rule */
+        final private int status;
+        /** Value of the rule as written in the table */
+        final private String value;
+
+        private Rule(String kind, String value, int status) {
+            this.kind = kind;
+            this.status = status;
+            this.value = value;
+        }
+
+        /**
+         * @param kind  Kind of rule
+         * @param value Value of the rule
+         * @return the rule, or null if it isn't valid
+         */
+        static private Rule create(String kind, String value) {
+            if (kind.equals(RULE_REASON) || kind.equals(RULE_ALSO))
+                return new Rule(kind, value, STATUS_UNKNOWN);
+            if (!kind.equals(RULE_STATUS))
+                return null;
+            switch (value) {
+            case "pending":
+                return new Rule(kind, value, STATUS_PENDING);
+            case "accepted":
+                return new Rule(kind, value, STATUS_ACCEPTED);
+            case "rejected":
+                return new Rule(kind, value, STATUS_REJECTED);
+            default:
+                return null;
+            }
+        }
+    }
+}
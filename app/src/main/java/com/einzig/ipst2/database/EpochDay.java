@@ -0,0 +1,87 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+import android.database.Cursor;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.joda.time.chrono.ISOChronology;
+
+import static com.einzig.ipst2.database.DatabaseInterface.DATE_FORMATTER;
+
+/**
+ * Converts between LocalDate and the number of days since 1970-01-01, which is how dates are
+ * stored in the database.
+ */
+final class EpochDay {
+    private EpochDay() {
+    }
+
+    /**
+     * @param epochDay Number of days since 1970-01-01
+     * @return the date epochDay days after 1970-01-01
+     */
+    static LocalDate toLocalDate(long epochDay) {
+        return new LocalDate(epochDay * DateTimeConstants.MILLIS_PER_DAY,
+                ISOChronology.getInstanceUTC());
+    }
+
+    /**
+     * @param date A day
+     * @return number of days between 1970-01-01 and date
+     */
+    static long fromLocalDate(LocalDate date) {
+        return date.toDateTimeAtStartOfDay(DateTimeZone.UTC).getMillis() /
+                DateTimeConstants.MILLIS_PER_DAY;
+    }
+
+    /**
+     * Safely get the epoch day of a date
+     *
+     * @param date A day, or null
+     * @return number of days between 1970-01-01 and date, or today if date is null
+     */
+    static long fromLocalDateSafe(LocalDate date) {
+        return fromLocalDate(date != null ? date : LocalDate.now());
+    }
+
+    /**
+     * Read a date column. Rows written before dates were stored as integers may still hold an ISO
+     * date string, or an empty string for an unknown date.
+     *
+     * @param cursor Cursor positioned on a row
+     * @param column Index of the date column
+     * @return the date stored in the column, or today if it can't be read
+     */
+    static LocalDate read(Cursor cursor, int column) {
+        if (cursor.getType(column) == Cursor.FIELD_TYPE_INTEGER)
+            return toLocalDate(cursor.getLong(column));
+        try {
+            return DATE_FORMATTER.parseLocalDate(cursor.getString(column));
+        } catch (IllegalArgumentException e) {
+            return LocalDate.now();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+import android.provider.BaseColumns;
+
+/**
+ * Table of the mail folders in the user's account, so finding the folder to parse doesn't have to
+ * list every folder on the server each time.
+ */
+
+public class FolderCatalogContract {
+    static final String SQL_CREATE_ENTRIES =
+            "CREATE TABLE " + FolderEntry.TABLE_FOLDERS + " (" +
+                    FolderEntry.COLUMN_FOLDER + " TEXT PRIMARY KEY, " +
+                    FolderEntry.COLUMN_UID_VALIDITY + " INTEGER)";
+
+    static final String SQL_DELETE_ENTRIES =
+            "DROP TABLE IF EXISTS " + FolderEntry.TABLE_FOLDERS;
+
+    private FolderCatalogContract() {
+    }
+
+    public static class FolderEntry implements BaseColumns {
+        /** Table key for the full name of the mail folder */
+        static final String COLUMN_FOLDER = "folder";
+        /** Table key for the folder's UIDVALIDITY, null until the folder has been opened */
+        static final String COLUMN_UID_VALIDITY = "uidValidity";
+        /** The name of the table containing the folder catalog */
+        static final String TABLE_FOLDERS = "folders";
+    }
+}
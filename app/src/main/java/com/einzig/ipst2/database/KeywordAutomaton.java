@@ -0,0 +1,202 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton which finds every occurrence of a set of phrases in a single pass over a
+ * text. The transitions are stored as a complete table, so each character costs one lookup.
+ */
+final class KeywordAutomaton {
+    /** Returned by {@link #getMatches(int)} for states where no phrase ends */
+    static final private int[] NO_MATCHES = new int[0];
+    /** Number of characters with a column in ascii */
+    static final private int ASCII = 128;
+
+    /** Column of each ASCII character in the transition table, -1 if no phrase contains it */
+    final private int[] ascii;
+    /** Column of each other character in the transition table */
+    final private Map<Character, Integer> columns;
+    /** Indexes of the phrases which end at each state */
+    final private int[][] matches;
+    /** Number of phrases the automaton finds */
+    final private int phraseCount;
+    /** Next state for each state and column */
+    final private int[][] transitions;
+
+    /**
+     * Build the automaton for a set of phrases
+     *
+     * @param phrases Phrases to find, a match reports the phrase's index in the list
+     */
+    KeywordAutomaton(List<String> phrases) {
+        ascii = new int[ASCII];
+        Arrays.fill(ascii, -1);
+        columns = new HashMap<>();
+        int columnCount = 0;
+        for (String phrase : phrases) {
+            for (int i = 0; i < phrase.length(); ++i) {
+                if (getColumn(phrase.charAt(i)) == -1)
+                    setColumn(phrase.charAt(i), columnCount++);
+            }
+        }
+        phraseCount = phrases.size();
+
+        // Build a trie of the phrases, -1 marks a missing edge
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> outputs = new ArrayList<>();
+        trie.add(newState(columnCount));
+        outputs.add(new ArrayList<Integer>());
+        for (int p = 0; p < phrases.size(); ++p) {
+            int state = 0;
+            for (int i = 0; i < phrases.get(p).length(); ++i) {
+                int column = getColumn(phrases.get(p).charAt(i));
+                if (trie.get(state)[column] == -1) {
+                    trie.get(state)[column] = trie.size();
+                    trie.add(newState(columnCount));
+                    outputs.add(new ArrayList<Integer>());
+                }
+                state = trie.get(state)[column];
+            }
+            outputs.get(state).add(p);
+        }
+
+        // Follow failure links breadth first to turn the trie into a complete transition table
+        int[] failure = new int[trie.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        int[] root = trie.get(0);
+        for (int column = 0; column < columnCount; ++column) {
+            if (root[column] == -1) {
+                root[column] = 0;
+            } else {
+                failure[root[column]] = 0;
+                queue.add(root[column]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            int[] edges = trie.get(state);
+            for (int column = 0; column < columnCount; ++column) {
+                int next = edges[column];
+                if (next == -1) {
+                    edges[column] = trie.get(failure[state])[column];
+                } else {
+                    failure[next] = trie.get(failure[state])[column];
+                    outputs.get(next).addAll(outputs.get(failure[next]));
+                    queue.add(next);
+                }
+            }
+        }
+
+        transitions = trie.toArray(new int[trie.size()][]);
+        matches = new int[trie.size()][];
+        for (int state = 0; state < matches.length; ++state) {
+            List<Integer> output = outputs.get(state);
+            matches[state] = output.isEmpty() ? NO_MATCHES : new int[output.size()];
+            for (int i = 0; i < output.size(); ++i)
+                matches[state][i] = output.get(i);
+        }
+    }
+
+    /**
+     * @param c Character being looked up
+     * @return column of c in the transition table, or -1 if no phrase contains it
+     */
+    private int getColumn(char c) {
+        if (c < ASCII)
+            return ascii[c];
+        Integer column = columns.get(c);
+        return column == null ? -1 : column;
+    }
+
+    /**
+     * @param state State of the automaton
+     * @return indexes of the phrases which end at state
+     */
+    int[] getMatches(int state) {
+        return matches[state];
+    }
+
+    /**
+     * @return number of phrases the automaton finds
+     */
+    int getPhraseCount() {
+        return phraseCount;
+    }
+
+    /**
+     * @param columnCount Number of columns in the transition table
+     * @return a trie node with no edges
+     */
+    static private int[] newState(int columnCount) {
+        int[] state = new int[columnCount];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    /**
+     * Advance the automaton by one character
+     *
+     * @param state Current state, 0 at the start of the text
+     * @param c     Next character of the text
+     * @return the state after reading c
+     */
+    int next(int state, char c) {
+        int column = getColumn(c);
+        return column == -1 ? 0 : transitions[state][column];
+    }
+
+    /**
+     * Find which phrases a text contains
+     *
+     * @param text Text being searched
+     * @return for each phrase, true if text contains it
+     */
+    boolean[] scan(String text) {
+        boolean[] found = new boolean[phraseCount];
+        int state = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            state = next(state, text.charAt(i));
+            for (int phrase : matches[state])
+                found[phrase] = true;
+        }
+        return found;
+    }
+
+    /**
+     * @param c      Character being given a column
+     * @param column Column of c in the transition table
+     */
+    private void setColumn(char c, int column) {
+        if (c < ASCII)
+            ascii[c] = column;
+        else
+            columns.put(c, column);
+    }
+}
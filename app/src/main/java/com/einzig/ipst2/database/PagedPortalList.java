@@ -0,0 +1,277 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.util.Logger;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A read-only list of portals backed by a database query. Portals are loaded a page at a time as
+ * they're requested, and only a few pages are kept in memory, so a list of thousands of portals
+ * only builds the PortalSubmission objects that are on or near the screen.
+ * <p>
+ * Pages are always loaded in the background, so {@link #get(int)} never waits on the database
+ * and returns null for a portal whose page isn't loaded yet. When a portal within
+ * prefetchDistance of either end of its page is requested, the neighbouring page is loaded too.
+ * The {@link OnChangeListener} is told on the UI thread whenever a page finishes loading.
+ * </p>
+ * <p>
+ * Email is parsed in the background while the list is open, so portals can leave the list after
+ * it was counted. A page which comes back shorter than expected makes the list count the portals
+ * again and drop the other pages it has loaded.
+ * </p>
+ */
+public class PagedPortalList extends AbstractList<PortalSubmission> {
+    /** Default number of portals loaded by each query */
+    static final public int DEFAULT_PAGE_SIZE = 50;
+    /** Default distance from the end of a page at which the next page is loaded */
+    static final public int DEFAULT_PREFETCH_DISTANCE = 15;
+    /** Maximum number of pages kept in memory */
+    static final private int MAX_CACHED_PAGES = 5;
+    /** Sort by response date, or submission date for pending portals, oldest first */
+    static final public int SORT_RESPONSE_DATE = 0;
+    /** Sort by response date, or submission date for pending portals, newest first */
+    static final public int SORT_RESPONSE_DATE_DESC = 1;
+    /** Sort by submission date, oldest first */
+    static final public int SORT_SUBMISSION_DATE = 2;
+    /** Sort by submission date, newest first */
+    static final public int SORT_SUBMISSION_DATE_DESC = 3;
+    /** Sort by name */
+    static final public int SORT_NAME = 4;
+    /** Sort by name in reverse */
+    static final public int SORT_NAME_DESC = 5;
+
+    /** Database the portals are read from */
+    final private DatabaseInterface db;
+    /** Query selecting the portals, without ORDER BY or LIMIT */
+    final private String query;
+    /** Arguments for wildcards in query */
+    final private String[] queryArgs;
+    /** ORDER BY clause used when loading pages */
+    final private String orderBy;
+    /** Number of portals loaded by each query */
+    final private int pageSize;
+    /** Distance from the end of a page at which the neighbouring page is loaded */
+    final private int prefetchDistance;
+    /** Recently used pages */
+    final private LruCache<Integer, List<PortalSubmission>> pages;
+    /** Pages being loaded in the background */
+    final private Set<Integer> loading;
+    /** Posts page loads to the UI thread */
+    final private Handler handler;
+    /** Told when a page finishes loading, may be null */
+    private volatile OnChangeListener listener;
+    /** Total number of portals selected by query, only changed on the UI thread once counted */
+    private volatile int size;
+
+    /**
+     * Create a new list and count the portals selected by query. Since this runs a query it
+     * shouldn't be called from the UI thread.
+     *
+     * @param db               Database the portals are read from
+     * @param query            Query selecting the portals, without ORDER BY or LIMIT
+     * @param queryArgs        Arguments for wildcards in query
+     * @param orderBy          ORDER BY clause used when loading pages
+     * @param pageSize         Number of portals loaded by each query
+     * @param prefetchDistance Distance from the end of a page at which the neighbouring page is
+     *                         loaded
+     */
+    PagedPortalList(DatabaseInterface db, String query, String[] queryArgs, String orderBy,
+            int pageSize, int prefetchDistance) {
+        this.db = db;
+        this.query = query;
+        this.queryArgs = queryArgs;
+        this.orderBy = orderBy;
+        this.pageSize = pageSize;
+        this.prefetchDistance = Math.min(prefetchDistance, pageSize);
+        this.pages = new LruCache<>(MAX_CACHED_PAGES);
+        this.loading = new HashSet<>();
+        this.handler = new Handler(Looper.getMainLooper());
+        this.size = count();
+    }
+
+    /**
+     * Count the portals selected by query
+     *
+     * @return number of portals selected by query
+     */
+    private int count() {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM (" + query + ")", queryArgs);
+        int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        cursor.close();
+        return count;
+    }
+
+    /**
+     * Get a portal if its page is in memory, otherwise start loading the page in the background
+     *
+     * @param index Position of the portal in the list
+     * @return the portal at index, or null if its page is still being loaded or it has left the
+     * list since the list was counted
+     */
+    @Override
+    public PortalSubmission get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        int page = index / pageSize;
+        int offset = index % pageSize;
+        List<PortalSubmission> portals = pages.get(page);
+        if (portals == null) {
+            load(page);
+            return null;
+        }
+        if (offset >= pageSize - prefetchDistance)
+            load(page + 1);
+        else if (offset < prefetchDistance)
+            load(page - 1);
+        return offset < portals.size() ? portals.get(offset) : null;
+    }
+
+    /**
+     * Query the database for a page of portals.
+     *
+     * @param page Index of the page
+     * @return portals on the page
+     */
+    private List<PortalSubmission> loadPage(int page) {
+        Logger.v("PagedPortalList#loadPage", "Loading page " + page);
+        List<PortalSubmission> portals = new ArrayList<>(pageSize);
+        Cursor cursor = db.rawQuery(query + " ORDER BY " + orderBy + " LIMIT " + pageSize +
+                " OFFSET " + (page * pageSize), queryArgs);
+        while (cursor.moveToNext())
+            portals.add(DatabaseInterface.buildPortal(cursor));
+        cursor.close();
+        return portals;
+    }
+
+    /**
+     * Load a page in the background if it exists and isn't already in memory. The page, and the
+     * new count if the page came back short, are handed to the UI thread, which updates the list
+     * and tells the listener together so the adapter never sees the size change unannounced.
+     *
+     * @param page Index of the page
+     */
+    private void load(final int page) {
+        if (page < 0 || page * pageSize >= size || pages.get(page) != null)
+            return;
+        synchronized (loading) {
+            if (!loading.add(page))
+                return;
+        }
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<PortalSubmission> portals = null;
+                int newSize = -1;
+                try {
+                    portals = loadPage(page);
+                    if (portals.size() < Math.min(pageSize, size - page * pageSize)) {
+                        Logger.d("PagedPortalList#load", "Page " + page + " is short, " +
+                                "counting portals again");
+                        newSize = count();
+                    }
+                } catch (RuntimeException e) {
+                    Logger.e("PagedPortalList#load", e.toString());
+                }
+                final List<PortalSubmission> loaded = portals;
+                final int counted = newSize;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (counted >= 0) {
+                            size = counted;
+                            pages.evictAll();
+                        }
+                        if (loaded != null)
+                            pages.put(page, loaded);
+                        synchronized (loading) {
+                            loading.remove(page);
+                        }
+                        OnChangeListener l = listener;
+                        if (l != null)
+                            l.onPortalsChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Set the listener told on the UI thread when a page finishes loading
+     *
+     * @param listener Listener to tell, or null to stop telling one
+     */
+    public void setOnChangeListener(OnChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Create a list of the portals in this list with a word in their name, live address, or
+     * rejection reason starting with each word in text. The search uses the full text index, so
+     * it doesn't scan every portal. Since this runs a query it shouldn't be called from the UI
+     * thread.
+     *
+     * @param text Text to search for
+     * @return list of the matching portals in this list, or this list if text has no words
+     */
+    public PagedPortalList search(String text) {
+        String expression = DatabaseInterface.getSearchExpression(text);
+        if (expression == null)
+            return this;
+        String[] args = new String[queryArgs.length + 1];
+        System.arraycopy(queryArgs, 0, args, 0, queryArgs.length);
+        args[queryArgs.length] = expression;
+        return new PagedPortalList(db, "SELECT * FROM (" + query + ") WHERE " +
+                DatabaseInterface.getSearchSelection(), args, orderBy, pageSize, prefetchDistance);
+    }
+
+    /**
+     * @return number of portals in the list
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Told when portals in the list have been loaded or the list has changed size
+     */
+    public interface OnChangeListener {
+        /**
+         * Called on the UI thread after a page of portals finishes loading
+         */
+        void onPortalsChanged();
+    }
+}
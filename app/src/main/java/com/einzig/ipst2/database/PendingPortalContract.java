@@ -24,6 +24,9 @@ package com.einzig.ipst2.database;
 import android.provider.BaseColumns;
 
 /**
+ * Table of pending portals used before database version 4. Only referenced by migrations, since
+ * all portals are now stored in the table described by {@link PortalContract}.
+ *
  * @author Ryan Porterfield
  * @since 2017-06-24
  */
@@ -32,7 +35,7 @@ public class PendingPortalContract {
     static final String SQL_CREATE_ENTRIES =
             "CREATE TABLE " + PendingPortalEntry.TABLE_PENDING + " (" +
                     PendingPortalEntry.COLUMN_NAME + " TEXT NOT NULL, " +
-                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + " DATETIME NOT NULL, " +
+                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + " INTEGER NOT NULL, " +
                     PendingPortalEntry.COLUMN_PICTURE_URL + " TEXT, PRIMARY KEY (" +
                     PendingPortalEntry.COLUMN_PICTURE_URL + ", " + PendingPortalEntry.COLUMN_NAME
                     + "))";
@@ -40,6 +43,13 @@ public class PendingPortalContract {
     static final String SQL_DELETE_ENTRIES =
             "DROP TABLE IF EXISTS " + PendingPortalEntry.TABLE_PENDING;
 
+    /** Index used by date range queries on pending portals */
+    static final String SQL_CREATE_DATE_SUBMITTED_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + PendingPortalEntry.TABLE_PENDING + "_" +
+                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + " ON " +
+                    PendingPortalEntry.TABLE_PENDING + " (" +
+                    PendingPortalEntry.COLUMN_DATE_SUBMITTED + ")";
+
     private PendingPortalContract() {
     }
 
@@ -27,15 +27,12 @@ import com.einzig.ipst2.portal.PortalAccepted;
 
 import org.joda.time.LocalDate;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import static com.einzig.ipst2.database.AcceptedPortalContract.AcceptedPortalEntry.COLUMN_INTEL_LINK_URL;
-import static com.einzig.ipst2.database.AcceptedPortalContract.AcceptedPortalEntry.COLUMN_LIVE_ADDRESS;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_DATE_RESPONDED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_DATE_SUBMITTED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_NAME;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_PICTURE_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_RESPONDED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_SUBMITTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_INTEL_LINK_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_LIVE_ADDRESS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_NAME;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_PICTURE_URL;
 
 /**
  * @author Ryan Porterfield
@@ -49,10 +46,10 @@ public final class PortalAcceptedBuilder extends PortalBuilder<PortalAccepted> {
     }
 
     @Override
-    public PortalAccepted build(String name, LocalDate dateResponded, String message) {
-        String pictureURL = parsePictureURL(message, name);
-        String address = parseLiveAddress(message);
-        String intelLink = parseIntelLink(message);
+    public PortalAccepted build(String name, LocalDate dateResponded, PortalEmail email) {
+        String pictureURL = email.getPictureURL(name);
+        String address = email.getLiveAddress();
+        String intelLink = email.getIntelLink();
         return new PortalAccepted(name, null, pictureURL, dateResponded, address,
                 intelLink);
     }
@@ -68,9 +65,9 @@ public final class PortalAcceptedBuilder extends PortalBuilder<PortalAccepted> {
         String name, pictureURL, location, intelLink;
         LocalDate submitted, responded;
         name = c.getString(c.getColumnIndex(COLUMN_NAME));
-        submitted = parseDate(c.getString(c.getColumnIndex(COLUMN_DATE_SUBMITTED)));
+        submitted = readDate(c, COLUMN_DATE_SUBMITTED);
         pictureURL = c.getString(c.getColumnIndex(COLUMN_PICTURE_URL));
-        responded = parseDate(c.getString(c.getColumnIndex(COLUMN_DATE_RESPONDED)));
+        responded = readDate(c, COLUMN_DATE_RESPONDED);
         location = c.getString(c.getColumnIndex(COLUMN_LIVE_ADDRESS));
         intelLink = c.getString(c.getColumnIndex(COLUMN_INTEL_LINK_URL));
         return new PortalAccepted(name, submitted, pictureURL, responded, location, intelLink);
@@ -100,48 +97,4 @@ public final class PortalAcceptedBuilder extends PortalBuilder<PortalAccepted> {
         return new PortalAccepted(name, parseDate(subDateStr), pictureURL, parseDate(accDateStr),
                 address, intelURL);
     }
-
-    /**
-     * Parse the intel link for an accepted portal from the email.
-     *
-     * @param messageString The body of the email as a String for parsing.
-     * @return Ingress Intel map link for the portal.
-     */
-    private String parseIntelLink(String messageString) {
-        String intelLinkURL;
-        Pattern p = Pattern.compile("href=\"(.*?)\"");
-        try {
-            Matcher m = p.matcher(messageString);
-            if (m.find()) {
-                intelLinkURL = m.group(1);
-            } else
-                intelLinkURL = "N/A";
-        } catch (Exception e) {
-            intelLinkURL = "N/A";
-            e.printStackTrace();
-        }
-        return intelLinkURL;
-    }
-
-    /**
-     * Parse the address of an accepted portal from the email.
-     *
-     * @param messageString The body of the email as a String for parsing.
-     * @return address of the portal.
-     */
-    private String parseLiveAddress(String messageString) {
-        String liveAddress;
-        Pattern titleFinder = Pattern.compile("<a[^>]*>(.*?)</a>",
-                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        liveAddress = "N/A";
-        try {
-            Matcher regexMatcher = titleFinder.matcher(messageString);
-            if (regexMatcher.find()) {
-                liveAddress = regexMatcher.group(1);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return liveAddress;
-    }
 }
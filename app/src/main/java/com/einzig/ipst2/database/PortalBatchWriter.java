@@ -0,0 +1,224 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.einzig.ipst2.portal.PortalAccepted;
+import com.einzig.ipst2.portal.PortalRejected;
+import com.einzig.ipst2.portal.PortalResponded;
+import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.util.Logger;
+
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_RESPONDED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_SUBMITTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_INTEL_LINK_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_LIVE_ADDRESS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_NAME;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_PICTURE_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_REJECTION_REASON;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_STATUS;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_PENDING;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.TABLE_PORTALS;
+
+/**
+ * Writes portals to the database with pre-compiled statements. A pending portal costs a single
+ * INSERT OR IGNORE. An accepted or rejected portal first tries a single-row UPDATE of the
+ * portal's existing row, which keeps the date it was submitted, and only inserts a new row if the
+ * portal isn't in the database yet. Reprocessing an email that's already in the database changes
+ * nothing, and emails can be written in any order: a submission written after its response only
+ * moves the date submitted back to the day it was really submitted. The caller is responsible for
+ * wrapping calls to {@link #write(PortalSubmission)} in a transaction and for calling
+ * {@link #close()} when done.
+ *
+ * Every statement binds the picture URL to ?1 and the portal name to ?2. A portal matches a row if
+ * the picture URLs are equal, or if both picture URLs are empty and the names are equal.
+ * Statements for responded portals also bind the date submitted to ?3, the date responded to ?4,
+ * the status to ?5, and the live address, intel link and rejection reason to ?6, ?7 and ?8.
+ */
+class PortalBatchWriter {
+    /** WHERE clause matching a portal by picture URL, or by name when it has no picture URL */
+    static final private String MATCH_PORTAL = COLUMN_PICTURE_URL + " = ?1 AND (?1 != '' OR " +
+            COLUMN_NAME + " = ?2)";
+    /** WHERE clause which is true if the portal isn't in the database */
+    static final private String NOT_EXISTS = "NOT EXISTS (SELECT 1 FROM " + TABLE_PORTALS +
+            " WHERE " + MATCH_PORTAL + ")";
+
+    /** Move the date submitted of a responded portal back to the date of its submission email */
+    final private SQLiteStatement fillSubmitted;
+    /** Insert a pending portal unless it's already in the database with any status */
+    final private SQLiteStatement insertPending;
+    /** Insert an accepted or rejected portal unless it's already in the database */
+    final private SQLiteStatement insertResponded;
+    /**
+     * Move a portal to accepted or rejected if it's pending, or if it was given a different
+     * response before the new one
+     */
+    final private SQLiteStatement updateResponded;
+
+    /**
+     * Compile all statements used by the writer
+     *
+     * @param db Database the portals are written to
+     */
+    PortalBatchWriter(SQLiteDatabase db) {
+        fillSubmitted = db.compileStatement("UPDATE " + TABLE_PORTALS + " SET " +
+                COLUMN_DATE_SUBMITTED + " = ?3 WHERE " + MATCH_PORTAL + " AND " + COLUMN_STATUS +
+                " != " + STATUS_PENDING + " AND " + COLUMN_DATE_SUBMITTED + " > ?3");
+        insertPending = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_PORTALS + " (" +
+                COLUMN_PICTURE_URL + ", " + COLUMN_NAME + ", " + COLUMN_DATE_SUBMITTED + ", " +
+                COLUMN_STATUS + ") SELECT ?1, ?2, ?3, " + STATUS_PENDING + " WHERE " + NOT_EXISTS);
+        insertResponded = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_PORTALS + " (" +
+                COLUMN_PICTURE_URL + ", " + COLUMN_NAME + ", " + COLUMN_DATE_SUBMITTED + ", " +
+                COLUMN_DATE_RESPONDED + ", " + COLUMN_STATUS + ", " + COLUMN_LIVE_ADDRESS + ", " +
+                COLUMN_INTEL_LINK_URL + ", " + COLUMN_REJECTION_REASON +
+                ") SELECT ?1, ?2, COALESCE(?3, ?4), ?4, ?5, ?6, ?7, ?8 WHERE " + NOT_EXISTS);
+        updateResponded = db.compileStatement("UPDATE " + TABLE_PORTALS + " SET " +
+                COLUMN_DATE_SUBMITTED + " = COALESCE(?3, " + COLUMN_DATE_SUBMITTED + "), " +
+                COLUMN_DATE_RESPONDED + " = ?4, " + COLUMN_STATUS + " = ?5, " +
+                COLUMN_LIVE_ADDRESS + " = ?6, " + COLUMN_INTEL_LINK_URL + " = ?7, " +
+                COLUMN_REJECTION_REASON + " = ?8 WHERE " + MATCH_PORTAL + " AND (" +
+                COLUMN_STATUS + " = " + STATUS_PENDING + " OR (" + COLUMN_STATUS + " != ?5 AND " +
+                COLUMN_DATE_RESPONDED + " < ?4))");
+    }
+
+    /**
+     * Bind a String to a statement, binding NULL if value is null
+     *
+     * @param statement Statement to bind the value to
+     * @param index     1-based index of the parameter
+     * @param value     Value being bound
+     */
+    static private void bind(SQLiteStatement statement, int index, String value) {
+        if (value == null)
+            statement.bindNull(index);
+        else
+            statement.bindString(index, value);
+    }
+
+    /**
+     * Bind the key of a portal to ?1 and ?2 of a statement
+     *
+     * @param statement Statement to bind the key to
+     * @param portal    Portal whose key is being bound
+     */
+    static private void bindKey(SQLiteStatement statement, PortalSubmission portal) {
+        statement.clearBindings();
+        bind(statement, 1, portal.getPictureURL() == null ? "" : portal.getPictureURL());
+        bind(statement, 2, portal.getName());
+    }
+
+    /**
+     * Bind an accepted or rejected portal to ?1 through ?8 of a statement
+     *
+     * @param statement       Statement to bind the portal to
+     * @param portal          Portal being bound
+     * @param liveAddress     Address of an accepted portal, otherwise null
+     * @param intelLinkURL    Intel link of an accepted portal, otherwise null
+     * @param rejectionReason Rejection reason of a rejected portal, otherwise null
+     */
+    static private void bindResponded(SQLiteStatement statement, PortalResponded portal,
+            String liveAddress, String intelLinkURL, String rejectionReason) {
+        bindKey(statement, portal);
+        if (portal.getDateSubmitted() == null)
+            statement.bindNull(3);
+        else
+            statement.bindLong(3, EpochDay.fromLocalDate(portal.getDateSubmitted()));
+        statement.bindLong(4, EpochDay.fromLocalDateSafe(portal.getDateResponded()));
+        statement.bindLong(5, DatabaseInterface.getStatus(portal));
+        bind(statement, 6, liveAddress);
+        bind(statement, 7, intelLinkURL);
+        bind(statement, 8, rejectionReason);
+    }
+
+    /**
+     * Release the compiled statements
+     */
+    void close() {
+        fillSubmitted.close();
+        insertPending.close();
+        insertResponded.close();
+        updateResponded.close();
+    }
+
+    /**
+     * Write a portal to the database. Portals which are already in the database are skipped, and
+     * accepted or rejected portals update their pending entry.
+     *
+     * @param portal Portal being written
+     * @return true if a row was inserted or updated, otherwise false
+     */
+    boolean write(PortalSubmission portal) {
+        if (portal instanceof PortalAccepted) {
+            PortalAccepted accepted = (PortalAccepted) portal;
+            Logger.v("PortalBatchWriter#write", "Accepted: " + portal.getName());
+            return writeResponded(accepted, accepted.getLiveAddress(), accepted.getIntelLinkURL(),
+                    null);
+        } else if (portal instanceof PortalRejected) {
+            PortalRejected rejected = (PortalRejected) portal;
+            Logger.v("PortalBatchWriter#write", "Rejected: " + portal.getName());
+            return writeResponded(rejected, null, null, rejected.getRejectionReason());
+        } else {
+            return writePending(portal);
+        }
+    }
+
+    /**
+     * Insert a pending portal. If its response was written first, the date submitted of the
+     * responded portal is corrected instead.
+     *
+     * @param portal Pending portal being written
+     * @return true if a row was inserted or updated, otherwise false
+     */
+    private boolean writePending(PortalSubmission portal) {
+        Logger.v("PortalBatchWriter#writePending", "Name: " + portal.getName());
+        long dateSubmitted = EpochDay.fromLocalDateSafe(portal.getDateSubmitted());
+        bindKey(insertPending, portal);
+        insertPending.bindLong(3, dateSubmitted);
+        if (insertPending.executeInsert() != -1)
+            return true;
+        bindKey(fillSubmitted, portal);
+        fillSubmitted.bindLong(3, dateSubmitted);
+        return fillSubmitted.executeUpdateDelete() > 0;
+    }
+
+    /**
+     * Update the row of an accepted or rejected portal in place, or insert it if it isn't in the
+     * database yet.
+     *
+     * @param portal          Portal being written
+     * @param liveAddress     Address of an accepted portal, otherwise null
+     * @param intelLinkURL    Intel link of an accepted portal, otherwise null
+     * @param rejectionReason Rejection reason of a rejected portal, otherwise null
+     * @return true if a row was inserted or updated, otherwise false
+     */
+    private boolean writeResponded(PortalResponded portal, String liveAddress,
+            String intelLinkURL, String rejectionReason) {
+        bindResponded(updateResponded, portal, liveAddress, intelLinkURL, rejectionReason);
+        if (updateResponded.executeUpdateDelete() > 0)
+            return true;
+        bindResponded(insertResponded, portal, liveAddress, intelLinkURL, rejectionReason);
+        return insertResponded.executeInsert() != -1;
+    }
+}
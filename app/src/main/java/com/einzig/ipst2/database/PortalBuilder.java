@@ -28,9 +28,6 @@ import com.einzig.ipst2.util.Logger;
 
 import org.joda.time.LocalDate;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import static com.einzig.ipst2.database.DatabaseInterface.DATE_FORMATTER;
 
 /**
@@ -62,13 +59,13 @@ public abstract class PortalBuilder<P extends PortalSubmission> {
     abstract P build(String[] csvLine);
 
     /**
-     * Create a new portal
+     * Create a new portal from an email which has already been scanned
      *
      * @param name          The portal name.
      * @param dateResponded The date the portal was rejected.
-     * @param message       The body of the email as a String for parsing.
+     * @param email         The parts of the email's body.
      */
-    public abstract P build(String name, LocalDate dateResponded, String message);
+    public abstract P build(String name, LocalDate dateResponded, PortalEmail email);
 
     static public PortalSubmission buildFromCSV(String[] csvLine) {
         String status = csvLine[4];
@@ -81,6 +78,17 @@ public abstract class PortalBuilder<P extends PortalSubmission> {
             return new PortalSubmissionBuilder().build(csvLine);
     }
 
+    /**
+     * Read a date from a database entry.
+     *
+     * @param cursor Cursor containing the database fields of the portal.
+     * @param column Name of the date column.
+     * @return the date stored in column, or today if it can't be read.
+     */
+    LocalDate readDate(Cursor cursor, String column) {
+        return EpochDay.read(cursor, cursor.getColumnIndex(column));
+    }
+
     LocalDate parseDate(String dateString) {
         try {
             return DATE_FORMATTER.parseLocalDate(dateString);
@@ -88,25 +96,4 @@ public abstract class PortalBuilder<P extends PortalSubmission> {
             return LocalDate.now();
         }
     }
-
-    /**
-     * Parse the URL of the portal picture from the email.
-     *
-     * @param message The body of the email as a String for parsing.
-     * @return the URL of the portal picture.
-     */
-    String parsePictureURL(String message, String portalName) {
-        String pictureURL = portalName;
-        Pattern pattern = Pattern.compile("<img[^>]+src\\s*=\\s*['\"]([^'\"]+)['\"][^>]*>",
-                Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
-        try {
-            Matcher matcher = pattern.matcher(message);
-            if (matcher.find())
-                pictureURL = matcher.group(1);
-        } catch (Exception e) {
-            e.printStackTrace();
-            pictureURL = "";
-        }
-        return pictureURL;
-    }
 }
@@ -0,0 +1,159 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+import android.provider.BaseColumns;
+
+/**
+ * Single table holding every portal submission, whatever its status.
+ */
+
+public class PortalContract {
+    static final String SQL_CREATE_ENTRIES =
+            "CREATE TABLE " + PortalEntry.TABLE_PORTALS + " (" +
+                    PortalEntry.COLUMN_NAME + " TEXT NOT NULL, " +
+                    PortalEntry.COLUMN_PICTURE_URL + " TEXT, " +
+                    PortalEntry.COLUMN_STATUS + " INTEGER NOT NULL, " +
+                    PortalEntry.COLUMN_DATE_SUBMITTED + " INTEGER NOT NULL, " +
+                    PortalEntry.COLUMN_DATE_RESPONDED + " INTEGER, " +
+                    PortalEntry.COLUMN_LIVE_ADDRESS + " TEXT, " +
+                    PortalEntry.COLUMN_INTEL_LINK_URL + " TEXT, " +
+                    PortalEntry.COLUMN_REJECTION_REASON + " TEXT, PRIMARY KEY (" +
+                    PortalEntry.COLUMN_PICTURE_URL + ", " + PortalEntry.COLUMN_NAME + "))";
+
+    static final String SQL_DELETE_ENTRIES =
+            "DROP TABLE IF EXISTS " + PortalEntry.TABLE_PORTALS;
+
+    /**
+     * Indexes used by queries on portals. Each list view filters on some of the leading columns
+     * and sorts on the rest, so SQLite can read a page of portals straight from the index.
+     */
+    static final String[] SQL_CREATE_INDEXES = {
+            createIndex(PortalEntry.COLUMN_STATUS, PortalEntry.COLUMN_DATE_SUBMITTED,
+                    PortalEntry.COLUMN_NAME),
+            createIndex(PortalEntry.COLUMN_STATUS, PortalEntry.COLUMN_DATE_RESPONDED,
+                    PortalEntry.COLUMN_NAME),
+            createIndex(PortalEntry.COLUMN_STATUS, PortalEntry.COLUMN_NAME),
+            createIndex(PortalEntry.COLUMN_DATE_SUBMITTED, PortalEntry.COLUMN_NAME),
+            createIndex(PortalEntry.COLUMN_NAME)
+    };
+
+    /**
+     * Full text index over the name, live address, and rejection reason of every portal. The text
+     * is read from the portals table, so the index only stores the terms. The docid of each row is
+     * the rowid of the portal.
+     */
+    static final String SQL_CREATE_SEARCH =
+            "CREATE VIRTUAL TABLE " + PortalEntry.TABLE_SEARCH + " USING fts4(content=\"" +
+                    PortalEntry.TABLE_PORTALS + "\", " + PortalEntry.COLUMN_NAME + ", " +
+                    PortalEntry.COLUMN_LIVE_ADDRESS + ", " + PortalEntry.COLUMN_REJECTION_REASON +
+                    ")";
+
+    static final String SQL_DELETE_SEARCH =
+            "DROP TABLE IF EXISTS " + PortalEntry.TABLE_SEARCH;
+
+    /** Rebuild the full text index from the contents of the portals table */
+    static final String SQL_REBUILD_SEARCH =
+            "INSERT INTO " + PortalEntry.TABLE_SEARCH + " (" + PortalEntry.TABLE_SEARCH +
+                    ") VALUES ('rebuild')";
+
+    /** Triggers keeping the full text index up to date with every write to the portals table */
+    static final String[] SQL_CREATE_SEARCH_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS " + PortalEntry.TABLE_SEARCH + "_bu BEFORE UPDATE ON " +
+                    PortalEntry.TABLE_PORTALS + " BEGIN " + deleteSearchTerms() + "; END",
+            "CREATE TRIGGER IF NOT EXISTS " + PortalEntry.TABLE_SEARCH + "_bd BEFORE DELETE ON " +
+                    PortalEntry.TABLE_PORTALS + " BEGIN " + deleteSearchTerms() + "; END",
+            "CREATE TRIGGER IF NOT EXISTS " + PortalEntry.TABLE_SEARCH + "_au AFTER UPDATE ON " +
+                    PortalEntry.TABLE_PORTALS + " BEGIN " + insertSearchTerms() + "; END",
+            "CREATE TRIGGER IF NOT EXISTS " + PortalEntry.TABLE_SEARCH + "_ai AFTER INSERT ON " +
+                    PortalEntry.TABLE_PORTALS + " BEGIN " + insertSearchTerms() + "; END"
+    };
+
+    private PortalContract() {
+    }
+
+    /**
+     * The terms are read from the row in the portals table, so this has to run before the row is
+     * changed.
+     *
+     * @return statement removing the terms of the old row from the full text index, for triggers
+     */
+    static private String deleteSearchTerms() {
+        return "DELETE FROM " + PortalEntry.TABLE_SEARCH + " WHERE docid = old.rowid";
+    }
+
+    /**
+     * @return statement adding the terms of the new row to the full text index, for triggers
+     */
+    static private String insertSearchTerms() {
+        return "INSERT INTO " + PortalEntry.TABLE_SEARCH + " (docid, " + PortalEntry.COLUMN_NAME +
+                ", " + PortalEntry.COLUMN_LIVE_ADDRESS + ", " +
+                PortalEntry.COLUMN_REJECTION_REASON + ") VALUES (new.rowid, new." +
+                PortalEntry.COLUMN_NAME + ", new." + PortalEntry.COLUMN_LIVE_ADDRESS + ", new." +
+                PortalEntry.COLUMN_REJECTION_REASON + ")";
+    }
+
+    /**
+     * @param columns Columns in the index
+     * @return CREATE INDEX statement for an index on columns of the portals table
+     */
+    static String createIndex(String... columns) {
+        StringBuilder name = new StringBuilder(PortalEntry.TABLE_PORTALS);
+        StringBuilder list = new StringBuilder();
+        for (String column : columns) {
+            name.append('_').append(column);
+            list.append(list.length() == 0 ? "" : ", ").append(column);
+        }
+        return "CREATE INDEX IF NOT EXISTS " + name + " ON " + PortalEntry.TABLE_PORTALS + " (" +
+                list + ")";
+    }
+
+    public static class PortalEntry implements BaseColumns {
+        /** Table key for the date Niantic approved or denied the portal, NULL while pending */
+        static final String COLUMN_DATE_RESPONDED = "dateResponded";
+        /** Table key for the date the portal was submitted */
+        static final String COLUMN_DATE_SUBMITTED = "dateSubmitted";
+        /** Table key for the link to the portal on the intel map */
+        public static final String COLUMN_INTEL_LINK_URL = "intelLinkURL";
+        /** Table key for address of the portal */
+        static final String COLUMN_LIVE_ADDRESS = "liveAddress";
+        /** Table key for portal name */
+        static final String COLUMN_NAME = "name";
+        /** Table key for the URL to the submission picture */
+        public static final String COLUMN_PICTURE_URL = "pictureURL";
+        /** Table key for the reason the portal was rejected */
+        static final String COLUMN_REJECTION_REASON = "rejectionReason";
+        /** Table key for the status of the portal, one of the STATUS constants */
+        static final String COLUMN_STATUS = "status";
+        /** Status of a portal which hasn't been responded to */
+        public static final int STATUS_PENDING = 0;
+        /** Status of an accepted portal */
+        public static final int STATUS_ACCEPTED = 1;
+        /** Status of a rejected portal */
+        public static final int STATUS_REJECTED = 2;
+        /** The name of the table containing all portal submissions */
+        public static final String TABLE_PORTALS = "portals";
+        /** The name of the full text index over the portals table */
+        static final String TABLE_SEARCH = "portals_search";
+    }
+}
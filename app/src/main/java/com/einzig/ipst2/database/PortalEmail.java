@@ -0,0 +1,281 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+/**
+ * The parts of a portal email's body that portals are built from, found in a single pass over the
+ * body instead of compiling and running a regular expression for each part. The same pass finds
+ * the phrases of the body {@link EmailRules}.
+ * <p>
+ * Each part is found exactly where the regular expression it replaces would have found it:
+ * <ul>
+ * <li>picture URL: {@code <img[^>]+src\s*=\s*['"]([^'"]+)['"][^>]*>}, case insensitive</li>
+ * <li>intel link: {@code href="(.*?)"}</li>
+ * <li>live address: {@code <a[^>]*>(.*?)</a>}, case insensitive, dot matches all</li>
+ * </ul>
+ * </p>
+ */
+public final class PortalEmail {
+    /** Returned when the body doesn't contain an intel link or live address */
+    static final private String NOT_AVAILABLE = "N/A";
+    /** ASCII characters that a tag or link being looked for can start with */
+    static final private boolean[] STARTS;
+
+    static {
+        STARTS = new boolean[128];
+        STARTS['<'] = true;
+        STARTS['h'] = true;
+    }
+
+    /** Which of the phrases of the body rules the body contains */
+    final private boolean[] found;
+    /** Body of the email, may be null */
+    final private String message;
+    /** Rules the email is classified by */
+    final private EmailRules rules;
+    /** Source of the first image, or null if there isn't one */
+    private String imageSource;
+    /** Target of the first link, or null if there isn't one */
+    private String link;
+    /** Text of the first anchor, or null if there isn't one */
+    private String linkText;
+
+    /**
+     * @param message Body of the email, may be null
+     * @param rules   Rules the email is classified by
+     */
+    private PortalEmail(String message, EmailRules rules) {
+        this.found = new boolean[rules.getBodyKeywords().getPhraseCount()];
+        this.message = message;
+        this.rules = rules;
+        if (message != null)
+            scan();
+    }
+
+    /**
+     * Scan the body of an email
+     *
+     * @param message Body of the email, may be null if it couldn't be read
+     * @param rules   Rules the email is classified by
+     * @return the parts of the email's body
+     */
+    static public PortalEmail parse(String message, EmailRules rules) {
+        return new PortalEmail(message, rules);
+    }
+
+    /**
+     * Check if the body contains a phrase, ignoring case
+     *
+     * @param phrase Phrase in lower case
+     * @param offset Where in the body the phrase starts
+     * @return true if the phrase is at offset, otherwise false
+     */
+    private boolean matchesIgnoreCase(String phrase, int offset) {
+        if (offset + phrase.length() > message.length())
+            return false;
+        for (int i = 0; i < phrase.length(); ++i) {
+            char c = message.charAt(offset + i);
+            // Only ASCII letters, like Pattern.CASE_INSENSITIVE
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            if (c != phrase.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return target of the first link in the email, or "N/A" if there isn't one
+     */
+    public String getIntelLink() {
+        return link == null ? NOT_AVAILABLE : link;
+    }
+
+    /**
+     * @return text of the first anchor in the email, or "N/A" if there isn't one
+     */
+    public String getLiveAddress() {
+        return linkText == null ? NOT_AVAILABLE : linkText;
+    }
+
+    /**
+     * @return reason the portal was rejected according to the body rules, or "N/A" if no rule
+     * matches
+     */
+    public String getRejectionReason() {
+        String reason = rules.getRejectionReason(found);
+        return reason == null ? NOT_AVAILABLE : reason;
+    }
+
+    /**
+     * @return status of the portal according to the body rules, or
+     * {@link EmailRules#STATUS_UNKNOWN} if no rule matches
+     */
+    public int getStatus() {
+        return rules.getStatus(found);
+    }
+
+    /**
+     * Get the URL of the portal picture
+     *
+     * @param portalName Name of the portal, returned if the email doesn't have a picture
+     * @return the source of the first image in the email, or an empty string if the email
+     * couldn't be read
+     */
+    public String getPictureURL(String portalName) {
+        if (message == null)
+            return "";
+        return imageSource == null ? portalName : imageSource;
+    }
+
+    /**
+     * @return true if the body of the email could be read, otherwise false
+     */
+    public boolean hasBody() {
+        return message != null;
+    }
+
+    /**
+     * Match {@code <a[^>]*>(.*?)</a>} where the body contains "<a"
+     *
+     * @param start Index of the '<'
+     * @return true if no anchor can start after start either, otherwise false
+     */
+    private boolean matchAnchor(int start) {
+        int tagEnd = message.indexOf('>', start + 2);
+        if (tagEnd == -1)
+            return true;
+        int close = tagEnd + 1;
+        while (close < message.length() && !matchesIgnoreCase("</a>", close))
+            ++close;
+        // Every later anchor ends at or after this tag, so it won't find a closing tag either
+        if (close >= message.length())
+            return true;
+        linkText = message.substring(tagEnd + 1, close);
+        return false;
+    }
+
+    /**
+     * Match {@code href="(.*?)"} where the body contains "href=\""
+     *
+     * @param start Index of the 'h'
+     */
+    private void matchHref(int start) {
+        int valueStart = start + "href=\"".length();
+        for (int i = valueStart; i < message.length(); ++i) {
+            char c = message.charAt(i);
+            if (c == '"') {
+                link = message.substring(valueStart, i);
+                return;
+            }
+            // Without DOTALL '.' doesn't match line terminators
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029')
+                return;
+        }
+    }
+
+    /**
+     * Match {@code <img[^>]+src\s*=\s*['"]([^'"]+)['"][^>]*>} where the body contains "<img". The
+     * greedy {@code [^>]+} means the last src in the tag which matches is used.
+     *
+     * @param start Index of the '<'
+     */
+    private void matchImage(int start) {
+        int attributes = start + "<img".length();
+        int tagEnd = message.indexOf('>', attributes);
+        if (tagEnd == -1)
+            tagEnd = message.length();
+        for (int i = tagEnd - 1; i > attributes && imageSource == null; --i) {
+            if (matchesIgnoreCase("src", i))
+                matchSource(i + "src".length());
+        }
+    }
+
+    /**
+     * Match {@code \s*=\s*['"]([^'"]+)['"][^>]*>} after the src of an image
+     *
+     * @param start Index of the character after "src"
+     */
+    private void matchSource(int start) {
+        int i = skipSpaces(start);
+        if (i >= message.length() || message.charAt(i) != '=')
+            return;
+        i = skipSpaces(i + 1);
+        if (i >= message.length() || !isQuote(message.charAt(i)))
+            return;
+        int valueStart = i + 1;
+        int valueEnd = valueStart;
+        while (valueEnd < message.length() && !isQuote(message.charAt(valueEnd)))
+            ++valueEnd;
+        if (valueEnd == valueStart || valueEnd >= message.length())
+            return;
+        if (message.indexOf('>', valueEnd + 1) != -1)
+            imageSource = message.substring(valueStart, valueEnd);
+    }
+
+    /**
+     * @param c Character being tested
+     * @return true if c quotes an attribute, otherwise false
+     */
+    static private boolean isQuote(char c) {
+        return c == '"' || c == '\'';
+    }
+
+    /**
+     * Find every part of the body in one pass. Each part stops being looked for once it's found.
+     */
+    private void scan() {
+        KeywordAutomaton keywords = rules.getBodyKeywords();
+        int state = 0;
+        boolean anchorPossible = true;
+        for (int i = 0; i < message.length(); ++i) {
+            char c = message.charAt(i);
+            state = keywords.next(state, c);
+            for (int phrase : keywords.getMatches(state))
+                found[phrase] = true;
+            // Most of the body is text and markup which no tag or link starts with
+            if (c >= STARTS.length || !STARTS[c])
+                continue;
+            if (c == '<') {
+                if (imageSource == null && matchesIgnoreCase("img", i + 1))
+                    matchImage(i);
+                if (anchorPossible && linkText == null && matchesIgnoreCase("a", i + 1))
+                    anchorPossible = !matchAnchor(i);
+            } else if (c == 'h' && link == null && message.startsWith("href=\"", i)) {
+                matchHref(i);
+            }
+        }
+    }
+
+    /**
+     * Skip the characters matched by {@code \s*}
+     *
+     * @param start Index to start skipping from
+     * @return index of the first character which isn't whitespace
+     */
+    private int skipSpaces(int start) {
+        int i = start;
+        while (i < message.length() && " \t\n\u000B\f\r".indexOf(message.charAt(i)) != -1)
+            ++i;
+        return i;
+    }
+}
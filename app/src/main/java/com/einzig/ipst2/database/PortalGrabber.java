@@ -25,19 +25,17 @@ import android.app.Activity;
 import android.os.AsyncTask;
 
 import com.einzig.ipst2.activities.PSListActivity;
-import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.sort.SortHelper;
 import com.einzig.ipst2.util.Logger;
 import com.einzig.ipst2.util.PreferencesHelper;
 
 import org.joda.time.LocalDate;
 
-import java.util.Vector;
-
 /*
  * Created by Steven Foskett on 6/29/2017.
  */
 
-public class PortalGrabber extends AsyncTask<Void, Void, Vector<? extends PortalSubmission>> {
+public class PortalGrabber extends AsyncTask<Void, Void, PagedPortalList> {
     private Activity fromAct;
     private String RANGE;
     private String TYPE;
@@ -51,15 +49,15 @@ public class PortalGrabber extends AsyncTask<Void, Void, Vector<? extends Portal
     }
 
     @Override
-    protected void onPostExecute(Vector<? extends PortalSubmission> result) {
+    protected void onPostExecute(PagedPortalList result) {
         if (this.fromAct instanceof PSListActivity) {
             ((PSListActivity) this.fromAct).AfterParse(result);
         }
     }
 
     @Override
-    protected Vector<? extends PortalSubmission> doInBackground(Void... voids) {
-        Vector<? extends PortalSubmission> psList = null;
+    protected PagedPortalList doInBackground(Void... voids) {
+        PagedPortalList psList = null;
         Logger.d("RANGE: " + RANGE);
         Logger.d("TYPE: " + TYPE);
         LocalDate viewDate = null;
@@ -69,32 +67,8 @@ public class PortalGrabber extends AsyncTask<Void, Void, Vector<? extends Portal
                 if (!RANGE.equalsIgnoreCase(""))
                     viewDate = new LocalDate(RANGE);
             if (TYPE != null)
-                switch (TYPE) {
-                case "all":
-                    if (viewDate == null)
-                        psList = db.getAllPortals(helper.isSeerOnly());
-                    else
-                        psList = db.getAllPortalsFromDate(viewDate, helper.isSeerOnly());
-                    break;
-                case "accepted":
-                    if (viewDate == null)
-                        psList = db.getAllAccepted(helper.isSeerOnly());
-                    else
-                        psList = db.getAcceptedByResponseDate(viewDate, helper.isSeerOnly());
-                    break;
-                case "pending":
-                    if (viewDate == null)
-                        psList = db.getAllPending(helper.isSeerOnly());
-                    else
-                        psList = db.getPendingByDate(viewDate, helper.isSeerOnly());
-                    break;
-                case "rejected":
-                    if (viewDate == null)
-                        psList = db.getAllRejected(helper.isSeerOnly());
-                    else
-                        psList = db.getRejectedByResponseDate(viewDate, helper.isSeerOnly());
-                    break;
-                }
+                psList = db.getPortalList(TYPE, viewDate, SortHelper.getSortOrder(fromAct),
+                        helper.isSeerOnly());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -27,11 +27,11 @@ import com.einzig.ipst2.portal.PortalRejected;
 
 import org.joda.time.LocalDate;
 
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_DATE_RESPONDED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_DATE_SUBMITTED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_NAME;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_PICTURE_URL;
-import static com.einzig.ipst2.database.RejectedPortalContract.RejectedPortalEntry.COLUMN_REJECTION_REASON;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_RESPONDED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_SUBMITTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_NAME;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_PICTURE_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_REJECTION_REASON;
 
 /**
  * @author Ryan Porterfield
@@ -55,10 +55,9 @@ public final class PortalRejectedBuilder extends PortalBuilder<PortalRejected> {
         String name, pictureURL, reason;
         LocalDate submitted, responded;
         name = c.getString(c.getColumnIndex(COLUMN_NAME));
-        submitted = parseDate(c.getString(
-                c.getColumnIndex(COLUMN_DATE_SUBMITTED)));
+        submitted = readDate(c, COLUMN_DATE_SUBMITTED);
         pictureURL = c.getString(c.getColumnIndex(COLUMN_PICTURE_URL));
-        responded = parseDate(c.getString(c.getColumnIndex(COLUMN_DATE_RESPONDED)));
+        responded = readDate(c, COLUMN_DATE_RESPONDED);
         reason = c.getString(c.getColumnIndex(COLUMN_REJECTION_REASON));
         return new PortalRejected(name, submitted, pictureURL, responded, reason);
     }
@@ -88,32 +87,9 @@ public final class PortalRejectedBuilder extends PortalBuilder<PortalRejected> {
     }
 
     @Override
-    public PortalRejected build(String name, LocalDate dateResponded, String message) {
-        String pictureURL = parsePictureURL(message, name);
-        String rejectionReason = parseRejectionReason(message);
+    public PortalRejected build(String name, LocalDate dateResponded, PortalEmail email) {
+        String pictureURL = email.getPictureURL(name);
+        String rejectionReason = email.getRejectionReason();
         return new PortalRejected(name, null, pictureURL, dateResponded, rejectionReason);
     }
-
-    /**
-     * Parse the reason a portal was rejected.
-     *
-     * @param messageString The body of the email as a String for parsing.
-     * @return the reason the portal was rejected.
-     */
-    private String parseRejectionReason(String messageString) {
-        String rejectionReason = "N/A";
-        if (messageString != null) {
-            if (messageString.contains("does not meet the criteria"))
-                rejectionReason = "Does not meet portal criteria";
-            if (messageString.contains("duplicate"))
-                rejectionReason = "Duplicate of another portal";
-            if (messageString.contains("too close")) {
-                if (rejectionReason.equalsIgnoreCase("N/A"))
-                    rejectionReason = "Too Close to another portal";
-                else
-                    rejectionReason = rejectionReason + " or too close to another portal";
-            }
-        }
-        return rejectionReason;
-    }
 }
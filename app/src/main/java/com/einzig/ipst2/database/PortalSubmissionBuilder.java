@@ -29,9 +29,9 @@ import com.einzig.ipst2.util.Logger;
 
 import org.joda.time.LocalDate;
 
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_DATE_SUBMITTED;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_NAME;
-import static com.einzig.ipst2.database.PendingPortalContract.PendingPortalEntry.COLUMN_PICTURE_URL;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_DATE_SUBMITTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_NAME;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.COLUMN_PICTURE_URL;
 
 /**
  * @author Ryan Porterfield
@@ -55,8 +55,7 @@ public final class PortalSubmissionBuilder extends PortalBuilder<PortalSubmissio
         String name, pictureURL;
         LocalDate dateSubmitted;
         name = c.getString(c.getColumnIndex(COLUMN_NAME));
-        dateSubmitted = parseDate(c.getString(c.getColumnIndex
-                (COLUMN_DATE_SUBMITTED)));
+        dateSubmitted = readDate(c, COLUMN_DATE_SUBMITTED);
         pictureURL = c.getString(c.getColumnIndex(COLUMN_PICTURE_URL));
         Logger.d("PSBuilder", "Name: " + name + "\tSubmitted: " + dateSubmitted + "\tP-URL: " +
                 pictureURL);
@@ -78,8 +77,8 @@ public final class PortalSubmissionBuilder extends PortalBuilder<PortalSubmissio
      * @inheritDoc
      */
     @Override
-    public PortalSubmission build(String name, LocalDate dateResponded, String message) {
-        String pictureURL = parsePictureURL(message, name);
+    public PortalSubmission build(String name, LocalDate dateResponded, PortalEmail email) {
+        String pictureURL = email.getPictureURL(name);
         return new PortalSubmission(name, dateResponded, pictureURL);
     }
 }
@@ -0,0 +1,81 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+/**
+ * Number of accepted, pending, and rejected portals in each of the ranges shown on the dashboard.
+ */
+public class PortalSummary {
+    /** Portals responded to, or submitted if pending, today */
+    static final public int RANGE_TODAY = 0;
+    /** Portals responded to, or submitted if pending, in the last week */
+    static final public int RANGE_WEEK = 1;
+    /** Portals responded to, or submitted if pending, in the last month */
+    static final public int RANGE_MONTH = 2;
+    /** All portals */
+    static final public int RANGE_ALL = 3;
+    /** Number of ranges in a summary */
+    static final int RANGE_COUNT = 4;
+
+    /** Number of accepted portals in each range */
+    final private long[] accepted;
+    /** Number of pending portals in each range */
+    final private long[] pending;
+    /** Number of rejected portals in each range */
+    final private long[] rejected;
+
+    /**
+     * @param accepted Number of accepted portals in each range
+     * @param pending  Number of pending portals in each range
+     * @param rejected Number of rejected portals in each range
+     */
+    PortalSummary(long[] accepted, long[] pending, long[] rejected) {
+        this.accepted = accepted;
+        this.pending = pending;
+        this.rejected = rejected;
+    }
+
+    /**
+     * @param range One of the RANGE constants
+     * @return number of accepted portals in range
+     */
+    public long getAccepted(int range) {
+        return accepted[range];
+    }
+
+    /**
+     * @param range One of the RANGE constants
+     * @return number of pending portals in range
+     */
+    public long getPending(int range) {
+        return pending[range];
+    }
+
+    /**
+     * @param range One of the RANGE constants
+     * @return number of rejected portals in range
+     */
+    public long getRejected(int range) {
+        return rejected[range];
+    }
+}
@@ -0,0 +1,56 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.database;
+
+import android.os.AsyncTask;
+
+import com.einzig.ipst2.activities.MainActivity;
+import com.einzig.ipst2.util.PreferencesHelper;
+
+/**
+ * Loads the dashboard counts off of the UI thread.
+ */
+public class SummaryGrabber extends AsyncTask<Void, Void, PortalSummary> {
+    /** Activity displaying the summary */
+    final private MainActivity activity;
+    /** Database the summary is read from */
+    final private DatabaseInterface db;
+    /** Only count portals which count towards the seer badge */
+    final private boolean seerOnly;
+
+    public SummaryGrabber(MainActivity activity, DatabaseInterface db) {
+        this.activity = activity;
+        this.db = db;
+        this.seerOnly = new PreferencesHelper(activity).isSeerOnly();
+    }
+
+    @Override
+    protected PortalSummary doInBackground(Void... voids) {
+        return db.getSummary(seerOnly);
+    }
+
+    @Override
+    protected void onPostExecute(PortalSummary summary) {
+        activity.onSummaryLoaded(summary);
+    }
+}
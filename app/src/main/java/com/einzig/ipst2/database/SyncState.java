@@ -0,0 +1,83 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+/**
+ * How far a mail folder has been synced. UIDs are only comparable while the folder's UIDVALIDITY
+ * stays the same, so when it changes the folder has to be searched from the beginning again.
+ * <p>
+ * A folder synced newest first has every UID from backfillUid up to lastUid parsed, and the
+ * history below backfillUid is parsed later in the background.
+ * </p>
+ */
+public class SyncState {
+    /** Lowest UID of the parsed range, 0 if every UID up to lastUid has been parsed */
+    final private long backfillUid;
+    /** Full name of the mail folder */
+    final private String folder;
+    /** Highest UID that has been parsed */
+    final private long lastUid;
+    /** UIDVALIDITY of the folder when lastUid was parsed */
+    final private long uidValidity;
+
+    /**
+     * @param folder      Full name of the mail folder
+     * @param uidValidity UIDVALIDITY of the folder when lastUid was parsed
+     * @param lastUid     Highest UID that has been parsed
+     * @param backfillUid Lowest UID of the parsed range, 0 if every UID up to lastUid has been
+     *                    parsed
+     */
+    public SyncState(String folder, long uidValidity, long lastUid, long backfillUid) {
+        this.backfillUid = backfillUid;
+        this.folder = folder;
+        this.uidValidity = uidValidity;
+        this.lastUid = lastUid;
+    }
+
+    /**
+     * @return lowest UID of the parsed range, 0 if every UID up to the last one has been parsed
+     */
+    public long getBackfillUid() {
+        return backfillUid;
+    }
+
+    /**
+     * @return full name of the mail folder
+     */
+    public String getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return highest UID that has been parsed
+     */
+    public long getLastUid() {
+        return lastUid;
+    }
+
+    /**
+     * @return UIDVALIDITY of the folder when lastUid was parsed
+     */
+    public long getUidValidity() {
+        return uidValidity;
+    }
+}
@@ -0,0 +1,61 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+import android.provider.BaseColumns;
+
+/**
+ * Table of how far each mail folder has been synced, so a parse only has to look at messages the
+ * server added since the last one.
+ */
+
+public class SyncStateContract {
+    static final String SQL_CREATE_ENTRIES =
+            "CREATE TABLE " + SyncStateEntry.TABLE_SYNC_STATE + " (" +
+                    SyncStateEntry.COLUMN_FOLDER + " TEXT PRIMARY KEY, " +
+                    SyncStateEntry.COLUMN_UID_VALIDITY + " INTEGER NOT NULL, " +
+                    SyncStateEntry.COLUMN_LAST_UID + " INTEGER NOT NULL, " +
+                    SyncStateEntry.COLUMN_BACKFILL_UID + " INTEGER NOT NULL DEFAULT 0)";
+
+    static final String SQL_ADD_BACKFILL_UID =
+            "ALTER TABLE " + SyncStateEntry.TABLE_SYNC_STATE + " ADD COLUMN " +
+                    SyncStateEntry.COLUMN_BACKFILL_UID + " INTEGER NOT NULL DEFAULT 0";
+
+    static final String SQL_DELETE_ENTRIES =
+            "DROP TABLE IF EXISTS " + SyncStateEntry.TABLE_SYNC_STATE;
+
+    private SyncStateContract() {
+    }
+
+    public static class SyncStateEntry implements BaseColumns {
+        /** Table key for the lowest UID of the parsed range, 0 once the history is parsed */
+        static final String COLUMN_BACKFILL_UID = "backfillUid";
+        /** Table key for the full name of the mail folder */
+        static final String COLUMN_FOLDER = "folder";
+        /** Table key for the highest UID that has been parsed */
+        static final String COLUMN_LAST_UID = "lastUid";
+        /** Table key for the folder's UIDVALIDITY when it was last synced */
+        static final String COLUMN_UID_VALIDITY = "uidValidity";
+        /** The name of the table containing the sync state of each folder */
+        static final String TABLE_SYNC_STATE = "syncState";
+    }
+}
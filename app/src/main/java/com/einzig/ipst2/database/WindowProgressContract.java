@@ -0,0 +1,54 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+import android.provider.BaseColumns;
+
+/**
+ * Table of how far a full resync or history backfill of each mail folder has got, so one which
+ * is killed part way through doesn't search and parse the windows it already wrote again.
+ */
+
+public class WindowProgressContract {
+    static final String SQL_CREATE_ENTRIES =
+            "CREATE TABLE " + WindowEntry.TABLE_WINDOW_PROGRESS + " (" +
+                    WindowEntry.COLUMN_FOLDER + " TEXT PRIMARY KEY, " +
+                    WindowEntry.COLUMN_UID_VALIDITY + " INTEGER NOT NULL, " +
+                    WindowEntry.COLUMN_PARSED_BEFORE + " INTEGER NOT NULL)";
+
+    static final String SQL_DELETE_ENTRIES =
+            "DROP TABLE IF EXISTS " + WindowEntry.TABLE_WINDOW_PROGRESS;
+
+    private WindowProgressContract() {
+    }
+
+    public static class WindowEntry implements BaseColumns {
+        /** Table key for the full name of the mail folder */
+        static final String COLUMN_FOLDER = "folder";
+        /** Table key for the day every email before has been parsed, as days since 1970-01-01 */
+        static final String COLUMN_PARSED_BEFORE = "parsedBefore";
+        /** Table key for the folder's UIDVALIDITY when the resync started */
+        static final String COLUMN_UID_VALIDITY = "uidValidity";
+        /** The name of the table containing the progress of each resync */
+        static final String TABLE_WINDOW_PROGRESS = "windowProgress";
+    }
+}
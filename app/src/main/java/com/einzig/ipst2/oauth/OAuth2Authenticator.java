@@ -41,6 +41,9 @@ import javax.mail.URLName;
  * OAuth2 SASL provider.
  */
 public class OAuth2Authenticator {
+    /** True once the OAuth2 SASL provider has been installed */
+    private static boolean initialized = false;
+
     /**
      * Connects and authenticates to an IMAP server with OAuth2. You must have
      * called {@code initialize}.
@@ -85,11 +88,13 @@ public class OAuth2Authenticator {
     }
 
     /**
-     * Installs the OAuth2 SASL provider. This must be called exactly once before
-     * calling other methods on this class.
+     * Installs the OAuth2 SASL provider the first time a store is connected.
      */
-    private void initialize() {
-        Security.addProvider(new OAuth2Provider());
+    private static synchronized void initialize() {
+        if (!initialized) {
+            Security.addProvider(new OAuth2Provider());
+            initialized = true;
+        }
     }
 
     private static final class OAuth2Provider extends Provider {
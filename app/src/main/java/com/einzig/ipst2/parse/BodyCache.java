@@ -0,0 +1,337 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.parse;
+
+import android.content.Context;
+
+import com.einzig.ipst2.util.Logger;
+import com.sun.mail.imap.IMAPFolder;
+
+import org.joda.time.LocalDate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Keeps the text of parsed emails on disk, so portals can be parsed again without downloading
+ * the emails.
+ * <p>
+ * Each email is stored in its own gzipped file with its subject and the date it was delivered,
+ * which is everything {@link EmailParser} reads. Emails are keyed by their Message-ID, which
+ * survives the folder's UIDVALIDITY changing, or by folder, UIDVALIDITY and UID if they don't
+ * have one. The cache is kept under {@link #MAX_BYTES}; when it grows past that the least
+ * recently used emails are removed. Reading an email counts as using it.
+ * </p>
+ */
+class BodyCache {
+    /** Name of the directory the cache is kept in, inside the app's cache directory */
+    static final private String DIRECTORY = "bodies";
+    /** Largest size of the cache in bytes */
+    static final private long MAX_BYTES = 16 * 1024 * 1024;
+    /** Size the cache is trimmed down to once it grows too large */
+    static final private long TRIM_BYTES = MAX_BYTES * 3 / 4;
+    /** Text is stored as UTF-8 */
+    static final private Charset UTF_8 = Charset.forName("UTF-8");
+    /** Format of the cache files, files in any other format are ignored */
+    static final private int VERSION = 1;
+    /** The cache shared by every parse */
+    static private BodyCache instance;
+
+    /** Directory holding the cache files */
+    final private File directory;
+    /** Total size of the cache files in bytes, -1 until they're measured */
+    private long size;
+
+    /**
+     * @param directory Directory holding the cache files
+     */
+    private BodyCache(File directory) {
+        this.directory = directory;
+        this.size = -1;
+    }
+
+    /**
+     * Get the cache shared by every parse
+     *
+     * @param context Any context from the application
+     * @return the body cache
+     */
+    static synchronized BodyCache getInstance(Context context) {
+        if (instance == null)
+            instance = new BodyCache(new File(context.getCacheDir(), DIRECTORY));
+        return instance;
+    }
+
+    /**
+     * Get the key an email is cached under. The envelope of the message should already have been
+     * fetched, so reading its Message-ID doesn't go back to the server.
+     *
+     * @param folder  Open folder containing the email
+     * @param message The email
+     * @return the email's key
+     */
+    static String key(IMAPFolder folder, Message message) {
+        try {
+            if (message instanceof MimeMessage) {
+                String messageId = ((MimeMessage) message).getMessageID();
+                if (messageId != null)
+                    return messageId;
+            }
+            return folder.getFullName() + "/" + folder.getUIDValidity() + "/" +
+                    folder.getUID(message);
+        } catch (MessagingException e) {
+            Logger.e(e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Check if an email is cached, without reading it
+     *
+     * @param key Key of the email, see {@link #key(IMAPFolder, Message)}
+     * @return true if the email is cached, otherwise false
+     */
+    boolean contains(String key) {
+        return key != null && getFile(key).isFile();
+    }
+
+    /**
+     * @return every file in the cache, least recently used first
+     */
+    File[] files() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return new File[0];
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long aModified = a.lastModified(), bModified = b.lastModified();
+                return aModified < bModified ? -1 : (aModified == bModified ? 0 : 1);
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Read an email from the cache
+     *
+     * @param key Key of the email, see {@link #key(IMAPFolder, Message)}
+     * @return the cached email, or null if it isn't cached
+     */
+    Entry get(String key) {
+        if (key == null)
+            return null;
+        File file = getFile(key);
+        Entry entry = read(file);
+        if (entry == null || !entry.key.equals(key))
+            return null;
+        if (!file.setLastModified(System.currentTimeMillis()))
+            Logger.v("BodyCache#get", "Couldn't mark " + file.getName() + " as used");
+        return entry;
+    }
+
+    /**
+     * Get the file an email is cached in
+     *
+     * @param key Key of the email
+     * @return the email's cache file, which may not exist
+     */
+    private File getFile(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest(key.getBytes(UTF_8)))
+                name.append(String.format("%02x", b));
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Measure the cache files if they haven't been measured yet
+     */
+    private void measure() {
+        if (size >= 0)
+            return;
+        size = 0;
+        for (File file : files())
+            size += file.length();
+        Logger.d("Body cache holds " + size / 1024 + "KB");
+    }
+
+    /**
+     * Cache the text of an email, replacing any text already cached for it
+     *
+     * @param key          Key of the email, see {@link #key(IMAPFolder, Message)}
+     * @param subject      Subject line of the email
+     * @param receivedDate Date the email was delivered
+     * @param text         Text of the email, see {@link EmailParser#getText(javax.mail.Part)}
+     */
+    synchronized void put(String key, String subject, LocalDate receivedDate, String text) {
+        if (key == null || subject == null || text == null)
+            return;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Logger.e("Couldn't create " + directory);
+            return;
+        }
+        measure();
+        File file = getFile(key);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(temp))));
+            try {
+                byte[] bytes = text.getBytes(UTF_8);
+                out.writeInt(VERSION);
+                out.writeUTF(key);
+                out.writeUTF(subject);
+                out.writeUTF(receivedDate.toString());
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            size -= file.length();
+            if (!temp.renameTo(file)) {
+                Logger.e("Couldn't write " + file);
+                temp.delete();
+                return;
+            }
+            size += file.length();
+        } catch (IOException e) {
+            Logger.e(e.toString());
+            temp.delete();
+            return;
+        }
+        if (size > MAX_BYTES)
+            trim();
+    }
+
+    /**
+     * Read an email from a cache file
+     *
+     * @param file A cache file
+     * @return the cached email, or null if the file can't be read
+     */
+    Entry read(File file) {
+        if (!file.isFile())
+            return null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            try {
+                if (in.readInt() != VERSION)
+                    return null;
+                String key = in.readUTF();
+                String subject = in.readUTF();
+                LocalDate receivedDate = LocalDate.parse(in.readUTF());
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new Entry(key, subject, receivedDate, new String(bytes, UTF_8));
+            } finally {
+                in.close();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.e(file.getName() + ": " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Remove the least recently used emails until the cache is below {@link #TRIM_BYTES}
+     */
+    private void trim() {
+        int removed = 0;
+        for (File file : files()) {
+            if (size <= TRIM_BYTES)
+                break;
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                ++removed;
+            }
+        }
+        Logger.d("Removed " + removed + " emails from the body cache");
+    }
+
+    /**
+     * An email read from the cache
+     */
+    static class Entry {
+        /** Key the email is cached under */
+        final private String key;
+        /** Date the email was delivered */
+        final private LocalDate receivedDate;
+        /** Subject line of the email */
+        final private String subject;
+        /** Text of the email */
+        final private String text;
+
+        private Entry(String key, String subject, LocalDate receivedDate, String text) {
+            this.key = key;
+            this.receivedDate = receivedDate;
+            this.subject = subject;
+            this.text = text;
+        }
+
+        /**
+         * @return date the email was delivered
+         */
+        LocalDate getReceivedDate() {
+            return receivedDate;
+        }
+
+        /**
+         * @return subject line of the email
+         */
+        String getSubject() {
+            return subject;
+        }
+
+        /**
+         * @return text of the email
+         */
+        String getText() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.parse;
+
+import com.einzig.ipst2.util.Logger;
+import com.sun.mail.iap.ProtocolException;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.BODY;
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+import com.sun.mail.imap.protocol.FetchResponse;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.Item;
+import com.sun.mail.imap.protocol.MessageSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Part;
+
+/**
+ * Downloads the text of messages on a background thread while the previous batch is being parsed.
+ * Without it every call to {@link Part#getContent()} is a separate round trip to the mail server.
+ * <p>
+ * For each batch the BODYSTRUCTURE of every message is fetched, then only the section holding the
+ * message's text, up to {@link #MAX_SECTION_BYTES}. Messages whose text is in the same section are
+ * fetched together, so a batch usually takes two FETCH commands. Images and attachments are never
+ * downloaded.
+ * </p>
+ * <p>
+ * Bodies are handed out by {@link #take()} in the same order as the messages. If a message's
+ * text can't be fetched the message is handed out as it is, and its content is downloaded when
+ * it's read.
+ * </p>
+ */
+class BodyFetcher extends Thread {
+    /** Number of batches fetched ahead of the one being parsed */
+    static final private int BATCHES_AHEAD = 2;
+    /** Maximum number of bytes downloaded from the text of each message */
+    static final private int MAX_SECTION_BYTES = 128 * 1024;
+
+    /** Number of messages downloaded by each FETCH */
+    final private int batchSize;
+    /** Bodies which have been downloaded but not parsed yet */
+    final private BlockingQueue<Part> bodies;
+    /** Folder containing the messages */
+    final private IMAPFolder folder;
+    /** Messages being downloaded */
+    final private Message[] messages;
+
+    /**
+     * @param folder    Open folder containing the messages
+     * @param messages  Messages being downloaded
+     * @param batchSize Number of messages downloaded by each FETCH
+     */
+    BodyFetcher(IMAPFolder folder, Message[] messages, int batchSize) {
+        super("BodyFetcher");
+        this.batchSize = batchSize;
+        this.bodies = new ArrayBlockingQueue<>(batchSize * BATCHES_AHEAD);
+        this.folder = folder;
+        this.messages = messages;
+    }
+
+    /**
+     * Fetch the same item of several messages with a single FETCH
+     *
+     * @param numbers Sequence numbers of the messages, in ascending order
+     * @param what    Item being fetched
+     * @param type    Class the item is parsed into
+     * @return the item for each message, null if the server didn't send it
+     * @throws MessagingException if the library encounters an error
+     */
+    private Item[] fetch(final int[] numbers, final String what, final Class<?> type)
+            throws MessagingException {
+        final Item[] items = new Item[numbers.length];
+        final Map<Integer, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < numbers.length; ++i)
+            indexes.put(numbers[i], i);
+        folder.doCommand(new IMAPFolder.ProtocolCommand() {
+            @Override
+            public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                Response[] responses = protocol.fetch(MessageSet.createMessageSets(numbers),
+                        what);
+                for (Response response : responses) {
+                    if (!(response instanceof FetchResponse))
+                        continue;
+                    FetchResponse fetchResponse = (FetchResponse) response;
+                    Item item = fetchResponse.getItem(type);
+                    Integer index = indexes.get(fetchResponse.getNumber());
+                    if (item != null && index != null)
+                        items[index] = item;
+                }
+                protocol.notifyResponseHandlers(responses);
+                protocol.handleResult(responses[responses.length - 1]);
+                return null;
+            }
+        });
+        return items;
+    }
+
+    /**
+     * Download the text of a batch of messages
+     *
+     * @param start First message in the batch
+     * @param end   End of the batch, exclusive
+     * @return the text of each message in the batch, null if it couldn't be downloaded
+     * @throws MessagingException if the library encounters an error
+     */
+    private Part[] fetchBatch(int start, int end) throws MessagingException {
+        int[] numbers = new int[end - start];
+        for (int i = start; i < end; ++i)
+            numbers[i - start] = messages[i].getMessageNumber();
+        Item[] structures = fetch(numbers, "BODYSTRUCTURE", BODYSTRUCTURE.class);
+        TextSection[] sections = new TextSection[numbers.length];
+        Map<String, List<Integer>> groups = new HashMap<>();
+        for (int i = 0; i < numbers.length; ++i) {
+            if (structures[i] != null)
+                sections[i] = TextSection.find((BODYSTRUCTURE) structures[i]);
+            if (sections[i] == null)
+                continue;
+            List<Integer> group = groups.get(sections[i].getSection());
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(sections[i].getSection(), group);
+            }
+            group.add(i);
+        }
+
+        Part[] parts = new Part[numbers.length];
+        for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+            List<Integer> indexes = group.getValue();
+            int[] groupNumbers = new int[indexes.size()];
+            for (int i = 0; i < groupNumbers.length; ++i)
+                groupNumbers[i] = numbers[indexes.get(i)];
+            // PEEK so parsing doesn't mark the emails as read
+            Item[] texts = fetch(groupNumbers, "BODY.PEEK[" + group.getKey() + "]<0." +
+                    MAX_SECTION_BYTES + ">", BODY.class);
+            for (int i = 0; i < texts.length; ++i) {
+                int index = indexes.get(i);
+                if (texts[i] != null)
+                    parts[index] = toPart(sections[index], (BODY) texts[i]);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Download a batch of messages and queue their bodies
+     *
+     * @param start First message in the batch
+     * @param end   End of the batch, exclusive
+     * @throws InterruptedException if the thread is interrupted while waiting for space in the
+     *                              queue
+     */
+    private void queueBatch(int start, int end) throws InterruptedException {
+        Part[] parts;
+        try {
+            parts = fetchBatch(start, end);
+        } catch (MessagingException | RuntimeException e) {
+            // The messages are still queued so the parser never waits for them
+            Logger.e(e.toString());
+            parts = new Part[end - start];
+        }
+        for (int i = start; i < end; ++i)
+            bodies.put(parts[i - start] != null ? parts[i - start] : messages[i]);
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int start = 0; start < messages.length; start += batchSize) {
+                queueBatch(start, Math.min(start + batchSize, messages.length));
+                Logger.d("Fetched " + Math.min(start + batchSize, messages.length) + " / " +
+                        messages.length + " messages");
+            }
+        } catch (InterruptedException e) {
+            Logger.d("Fetching messages cancelled");
+        }
+    }
+
+    /**
+     * Wait for the body of the next message to be downloaded
+     *
+     * @return the next message's body, which can be read without going back to the server
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    Part take() throws InterruptedException {
+        return bodies.take();
+    }
+
+    /**
+     * Decode a downloaded section of text
+     *
+     * @param section Section which was downloaded
+     * @param text    Section as sent by the server
+     * @return text part holding the section, or null if it can't be decoded
+     */
+    static private Part toPart(TextSection section, BODY text) {
+        try {
+            return section.toPart(text.getByteArrayInputStream());
+        } catch (IOException | MessagingException e) {
+            Logger.e(e.toString());
+            return null;
+        }
+    }
+}
@@ -30,15 +30,21 @@ import android.view.WindowManager;
 import com.einzig.ipst2.R;
 import com.einzig.ipst2.activities.MainActivity;
 import com.einzig.ipst2.database.DatabaseInterface;
-import com.einzig.ipst2.portal.PortalAccepted;
-import com.einzig.ipst2.portal.PortalRejected;
+import com.einzig.ipst2.database.EmailRules;
+import com.einzig.ipst2.database.SyncState;
 import com.einzig.ipst2.portal.PortalSubmission;
 import com.einzig.ipst2.util.Logger;
 import com.einzig.ipst2.util.PreferencesHelper;
 import com.einzig.ipst2.util.ThemeHelper;
+import com.sun.mail.imap.IMAPFolder;
 
 import org.joda.time.LocalDate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.activation.CommandMap;
 import javax.activation.MailcapCommandMap;
 import javax.mail.Message;
@@ -53,6 +59,14 @@ import static com.einzig.ipst2.database.DatabaseInterface.DATE_FORMATTER;
  * @since 2015-07-30
  */
 public class EmailParseTask extends AsyncTask<Void, Integer, Void> {
+    /**
+     * Number of messages parsed between checkpoints. Their portals are written in one transaction
+     * with the sync state up to the last of them.
+     */
+    static final private int CHECKPOINT_INTERVAL = 50;
+    /** Number of message bodies downloaded with one FETCH */
+    static final private int FETCH_BATCH_SIZE = 50;
+
     /** The calling activity. Used to update UI elements */
     final private MainActivity activity;
     /** Wrapper class for IMAPStore, Folder, and Message[] resources */
@@ -78,7 +92,7 @@ public class EmailParseTask extends AsyncTask<Void, Integer, Void> {
         this.bundle = bundle;
         this.db = new DatabaseInterface(activity);
         this.messages = bundle.getMessages();
-        this.parser = new EmailParser();
+        this.parser = new EmailParser(EmailRules.load(activity));
         this.helper = new PreferencesHelper(activity);
         addMailcaps();
         initProgressDialog();
@@ -88,7 +102,7 @@ public class EmailParseTask extends AsyncTask<Void, Integer, Void> {
     /**
      * Add mailcaps for the mail library.
      */
-    private void addMailcaps() {
+    static void addMailcaps() {
         MailcapCommandMap mc = (MailcapCommandMap) CommandMap.getDefaultCommandMap();
         mc.addMailcap("text/html;; x-java-content-handler=com.sun.mail.handlers.text_html");
         mc.addMailcap("text/xml;; x-java-content-handler=com.sun.mail.handlers.text_xml");
@@ -99,85 +113,152 @@ public class EmailParseTask extends AsyncTask<Void, Integer, Void> {
         CommandMap.setDefaultCommandMap(mc);
     }
 
-    /**
-     * Add a portal to the database
-     *
-     * @param p Instance of PortalSubmission or subclass to add to the database
-     */
-    private void addPortal(PortalSubmission p) {
-        if (p instanceof PortalAccepted && !db.containsAccepted(p.getPictureURL(), p.getName())) {
-            addPortalAccepted((PortalAccepted) p);
-        } else if (p instanceof PortalRejected && !db.containsRejected(p.getPictureURL(), p.getName())) {
-            addPortalRejected((PortalRejected) p);
-        } else if (p != null && !db.containsPending(p.getPictureURL(), p.getName())
-                && !db.containsRejected(p.getPictureURL(), p.getName())
-                && !db.containsAccepted(p.getPictureURL(), p.getName()))
-            addPortalSubmission(p);
+    @Override
+    protected Void doInBackground(Void... voids) {
+        Logger.d("Parsing email");
+        LocalDate now = LocalDate.now();
+        SyncState syncState = bundle.getSyncState();
+        if (bundle.isPartitioned()) {
+            syncState = parseWindows(syncState);
+            if (syncState != null)
+                db.setSyncState(syncState);
+            onEmailParse(now);
+            bundle.cleanup();
+            return null;
+        }
+        List<EmailParser.Envelope> envelopes = new ArrayList<>();
+        Message[] newMessages = findNewMessages(messages, parser, db, envelopes);
+        List<PortalSubmission> batch = new ArrayList<>(CHECKPOINT_INTERVAL);
+        ParsePool parsers = new ParsePool((IMAPFolder) bundle.getFolder(), newMessages,
+                envelopes, parser, BodyCache.getInstance(activity), FETCH_BATCH_SIZE);
+        parsers.start();
+        // Emails are parsed in parallel, but written from this thread in the order they arrived
+        for (int i = 0; i < newMessages.length; i++) {
+            PortalSubmission p;
+            try {
+                p = parsers.next();
+            } catch (InterruptedException e) {
+                Logger.e(e.toString());
+                // Keep the previous sync state, the portals already parsed are skipped next time
+                syncState = null;
+                break;
+            }
+            if (p != null)
+                batch.add(p);
+            if ((i + 1) % CHECKPOINT_INTERVAL == 0)
+                checkpoint(batch, newMessages[i]);
+            publishProgress(i, newMessages.length);
+            if (isCancelled()) {
+                // Without the UID of this message the previous sync state is kept
+                syncState = null;
+                try {
+                    now = new LocalDate(newMessages[i].getReceivedDate());
+                    syncState = bundle.getSyncState(newMessages[i]);
+                } catch (MessagingException e) {
+                    Logger.e(e.toString());
+                }
+                break;
+            }
+        }
+        parsers.shutdown();
+        db.addAll(batch, syncState);
+        onEmailParse(now);
+        bundle.cleanup();
+        return null;
     }
 
     /**
-     * Add a portal to the database
+     * Write a batch of portals along with the sync state up to the last message they were parsed
+     * from, so a sync which is killed resumes after that message
      *
-     * @param portal Instance of PortalAccepted to add to the database
+     * @param batch      Portals parsed since the last checkpoint, cleared once they're written
+     * @param lastParsed Last message which was parsed
      */
-    public void addPortalAccepted(PortalAccepted portal) {
-        PortalSubmission pending = db.getPendingPortal(portal.getPictureURL(), portal.getName(),
-                helper.isSeerOnly());
-        if (pending != null) {
-            portal.setDateSubmitted(pending.getDateSubmitted());
-            db.deletePending(pending);
-        } else {
-            portal.setDateSubmitted(portal.getDateResponded());
+    private void checkpoint(List<PortalSubmission> batch, Message lastParsed) {
+        SyncState checkpoint = null;
+        try {
+            checkpoint = bundle.getSyncState(lastParsed);
+        } catch (MessagingException e) {
+            Logger.e(e.toString());
         }
-        db.addPortalAccepted(portal);
+        db.addAll(batch, checkpoint);
+        batch.clear();
     }
 
     /**
-     * Add a portal to the database
+     * Classify every message from its envelope and drop the ones which are already in the
+     * database, so only the bodies of new messages are downloaded. Each portal in the database
+     * accounts for one email, so two portals with the same name and date still need two emails.
      *
-     * @param portal Instance of PortalRejected to add to the database
+     * @param messages  Messages matching the search, with their envelopes fetched
+     * @param parser    Parser used to classify the messages
+     * @param db        Database the portals are written to
+     * @param envelopes Filled with the envelope of each new message
+     * @return new messages, in the same order as they were found
      */
-    private void addPortalRejected(PortalRejected portal) {
-        PortalSubmission pending = db.getPendingPortal(portal.getPictureURL(), portal.getName(),
-                helper.isSeerOnly());
-        if (pending != null) {
-            portal.setDateSubmitted(pending.getDateSubmitted());
-            db.deletePending(pending);
-        } else {
-            portal.setDateSubmitted(portal.getDateResponded());
+    static Message[] findNewMessages(Message[] messages, EmailParser parser,
+            DatabaseInterface db, List<EmailParser.Envelope> envelopes) {
+        Map<String, Long> recordedCounts = new HashMap<>();
+        List<Message> newMessages = new ArrayList<>();
+        for (Message message : messages) {
+            EmailParser.Envelope envelope = parser.getEnvelope(message);
+            if (envelope == null)
+                continue;
+            String key = envelope.getPortalName() + "\n" + envelope.getReceivedDate() + "\n" +
+                    envelope.isResponse();
+            Long recorded = recordedCounts.get(key);
+            if (recorded == null)
+                recorded = db.getRecordedCount(envelope.getPortalName(),
+                        envelope.getReceivedDate(), envelope.isResponse());
+            if (recorded > 0) {
+                recordedCounts.put(key, recorded - 1);
+            } else {
+                recordedCounts.put(key, 0L);
+                newMessages.add(message);
+                envelopes.add(envelope);
+            }
         }
-        db.addPortalRejected(portal);
+        Logger.d(newMessages.size() + " of " + messages.length + " messages are new");
+        return newMessages.toArray(new Message[newMessages.size()]);
     }
 
     /**
-     * Add a portal to the database
+     * Parse the folder's whole history in date windows over several connections. Windows finish
+     * in any order but are written oldest first. UIDs aren't in date order across windows, so the
+     * sync state is only recorded once every window has been written. Until then each window is
+     * written along with its end date, and a resync which is restarted skips the windows which
+     * were written before a failed one.
      *
-     * @param portal Instance of PortalSubmission (but not a subclass) to add to the database
+     * @param syncState Sync state of the folder once every window has been parsed
+     * @return syncState, or null if a window failed or the task was cancelled
      */
-    private void addPortalSubmission(PortalSubmission portal) {
-        db.addPortalSubmission(portal);
-    }
-
-    @Override
-    protected Void doInBackground(Void... voids) {
-        Logger.d("Parsing email");
-        LocalDate now = LocalDate.now();
-        for (int i = 0; i < messages.length; i++) {
-            PortalSubmission p = parser.getPortal(messages[i]);
-            addPortal(p);
-            publishProgress(i, messages.length);
-            if (isCancelled()) {
-                try {
-                    now = new LocalDate(messages[i].getReceivedDate());
-                } catch (MessagingException e) {
-                    Logger.e(e.toString());
-                }
-                break;
+    private SyncState parseWindows(SyncState syncState) {
+        String folder = bundle.getFolder().getFullName();
+        long uidValidity = syncState.getUidValidity();
+        WindowPool windows = new WindowPool((IMAPFolder) bundle.getFolder(), parser,
+                BodyCache.getInstance(activity), db, 0);
+        windows.start(LocalDate.now(), db.getWindowProgress(folder, uidValidity));
+        try {
+            for (int i = 0; i < windows.size(); i++) {
+                LocalDate end = windows.nextEnd();
+                List<PortalSubmission> portals = windows.next();
+                if (portals == null)
+                    syncState = null;
+                else if (syncState != null && end != null)
+                    db.addWindow(portals, folder, uidValidity, end);
+                else
+                    db.addAll(portals, null);
+                publishProgress(i, windows.size());
+                if (isCancelled())
+                    return null;
             }
+        } catch (InterruptedException e) {
+            Logger.e(e.toString());
+            return null;
+        } finally {
+            windows.shutdown();
         }
-        onEmailParse(now);
-        bundle.cleanup();
-        return null;
+        return syncState;
     }
 
     /**
@@ -211,9 +292,11 @@ public class EmailParseTask extends AsyncTask<Void, Integer, Void> {
         Logger.d("Accepted portals: " + db.getAcceptedCount(helper.isSeerOnly()));
         Logger.d("Pending portals: " + db.getPendingCount(helper.isSeerOnly()));
         Logger.d("Rejected portals: " + db.getRejectedCount(helper.isSeerOnly()));
+        db.close();
         activity.getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         dialog.dismiss();
         activity.buildUIAfterParsing();
+        HistoryBackfill.startIfNeeded(activity, bundle.getAccount());
     }
 
     /*
@@ -230,6 +313,8 @@ public class EmailParseTask extends AsyncTask<Void, Integer, Void> {
      */
     @Override
     protected void onProgressUpdate(Integer... progress) {
+        // Only new messages are parsed, which isn't known until their envelopes are read
+        dialog.setMax(progress[1]);
         dialog.setProgress(progress[0] + 1);
         Logger.v("Parsing: " + dialog.getProgress() + " / " + dialog.getMax());
     }
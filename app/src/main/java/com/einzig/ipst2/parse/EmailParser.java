@@ -23,8 +23,10 @@
 
 package com.einzig.ipst2.parse;
 
+import com.einzig.ipst2.database.EmailRules;
 import com.einzig.ipst2.database.PortalAcceptedBuilder;
 import com.einzig.ipst2.database.PortalBuilder;
+import com.einzig.ipst2.database.PortalEmail;
 import com.einzig.ipst2.database.PortalRejectedBuilder;
 import com.einzig.ipst2.database.PortalSubmissionBuilder;
 import com.einzig.ipst2.portal.PortalSubmission;
@@ -39,6 +41,10 @@ import javax.mail.MessagingException;
 import javax.mail.Multipart;
 import javax.mail.Part;
 
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_ACCEPTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_PENDING;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_REJECTED;
+
 /**
  * Parses portal submission and review emails
  *
@@ -48,12 +54,17 @@ import javax.mail.Part;
 class EmailParser {
     final private PortalBuilder acceptedBuilder;
     final private PortalBuilder rejectedBuilder;
+    /** Rules emails are classified by */
+    final private EmailRules rules;
     final private PortalBuilder submissionBuilder;
 
     /**
      * Create a new EmailParser
+     *
+     * @param rules Rules emails are classified by
      */
-    EmailParser() {
+    EmailParser(EmailRules rules) {
+        this.rules = rules;
         acceptedBuilder = new PortalAcceptedBuilder();
         rejectedBuilder = new PortalRejectedBuilder();
         submissionBuilder = new PortalSubmissionBuilder();
@@ -73,19 +84,70 @@ class EmailParser {
      * @return PortalSubmission or subclass if the email can be parsed, otherwise null
      */
     PortalSubmission getPortal(Message message) {
-        String messageString, subject;
+        Envelope envelope = getEnvelope(message);
+        return envelope == null ? null : getPortal(envelope, message);
+    }
+
+    /**
+     * Get a portal object from an email whose envelope has already been read
+     *
+     * @param envelope What the email's envelope says about the portal
+     * @param body     The body of the email, which may be a local copy of it
+     * @return PortalSubmission or subclass if the email can be parsed, otherwise null
+     */
+    PortalSubmission getPortal(Envelope envelope, Part body) {
+        return getPortal(envelope, getText(body));
+    }
+
+    /**
+     * Get a portal object from the text of an email whose envelope has already been read
+     *
+     * @param envelope What the email's envelope says about the portal
+     * @param text     The text of the email, see {@link #getText(Part)}
+     * @return PortalSubmission or subclass if the email can be parsed, otherwise null
+     */
+    PortalSubmission getPortal(Envelope envelope, String text) {
+        PortalEmail email = PortalEmail.parse(text, rules);
+        if (envelope.builder != null)
+            return envelope.builder.build(envelope.portalName, envelope.receivedDate, email);
+        return parseNewFormat(envelope.portalName, email, envelope.receivedDate);
+    }
+
+    /**
+     * Classify an email from its subject, which doesn't need the body of the email to be
+     * downloaded.
+     *
+     * @param message A Message being parsed.
+     * @return what the email's envelope says about the portal, or null if it can't be read
+     */
+    Envelope getEnvelope(Message message) {
+        String subject;
         LocalDate receivedDate;
         try {
             subject = message.getSubject();
-            subject = cleanSubject(subject);
             receivedDate = new LocalDate(message.getReceivedDate());
         } catch (MessagingException e) {
             return null;
         }
         /*if (!isEmailFromNiantic(message))
             return null;*/
-        messageString = getText(message);
-        return parse(subject, messageString, receivedDate);
+        return getEnvelope(subject, receivedDate);
+    }
+
+    /**
+     * Classify an email from its subject and the date it was delivered, which may have been read
+     * from a local copy of the email
+     *
+     * @param subject      Email subject line
+     * @param receivedDate Date the email was delivered
+     * @return what the email's envelope says about the portal
+     */
+    Envelope getEnvelope(String subject, LocalDate receivedDate) {
+        String cleaned = cleanSubject(subject);
+        Logger.d("Parsing: " + cleaned);
+        String portalName = getPortalName(cleaned).trim();
+        return new Envelope(subject, portalName, receivedDate,
+                getBuilder(cleaned.toLowerCase()));
     }
 
     /**
@@ -109,7 +171,7 @@ class EmailParser {
      * @param p The body of the message.
      * @return A String representation of the email body.
      */
-    private String getText(Part p) {
+    String getText(Part p) {
         try {
             if (p.isMimeType("text/*")) {
                 return (String) p.getContent();
@@ -137,49 +199,95 @@ class EmailParser {
     }
 
     /**
-     * Parse a portal submission email
+     * Get the builder for the kind of email a subject belongs to
      *
-     * @param subject      Email subject line
-     * @param message      Email body
-     * @param receivedDate Date the email was delivered
-     * @return PortalSubmission or subclass if the email can be parsed, otherwise null
+     * @param subject Email subject line in lower case
+     * @return builder for the portal, or null if the email is in the new format, which can only be
+     * told apart by its body
      */
-    private PortalSubmission parse(String subject, String message, LocalDate receivedDate) {
-        Logger.d("Parsing: " + subject);
-        String portalName = getPortalName(subject).trim();
-        subject = subject.toLowerCase();
-        if (subject.contains("submitted") || subject.contains("submission"))
-            return submissionBuilder.build(portalName, receivedDate, message);
-        else if (subject.contains("portal live") ||
-                subject.contains(" *success!*"))
-            return acceptedBuilder.build(portalName, receivedDate, message);
-        else if (subject.contains("rejected") || subject.contains("duplicate"))
-            return rejectedBuilder.build(portalName, receivedDate, message);
-        else
-            return parseNewFormat(portalName, message, receivedDate);
+    private PortalBuilder getBuilder(String subject) {
+        switch (rules.classifySubject(subject)) {
+            case STATUS_PENDING:
+                return submissionBuilder;
+            case STATUS_ACCEPTED:
+                return acceptedBuilder;
+            case STATUS_REJECTED:
+                return rejectedBuilder;
+            default:
+                return null;
+        }
     }
 
     /**
      * Parse the new portal submission email format
      *
      * @param portalName   Name of the portal
-     * @param message      Email body
+     * @param email        Parts of the email body
      * @param receivedDate Date the email was delivered
      * @return PortalSubmission or subclass if the email can be parsed, otherwise null
      */
-    private PortalSubmission parseNewFormat(String portalName, String message,
+    private PortalSubmission parseNewFormat(String portalName, PortalEmail email,
             LocalDate receivedDate) {
         Logger.d("Parsing NEW FORMAT: " + portalName);
-        if (message != null) {
-            if (message.contains("not to accept") || message.contains("duplicate")
-                    || message.contains("not able to bring it online")) {
+        switch (email.getStatus()) {
+            case STATUS_REJECTED:
                 Logger.d("Parsing NEW FORMAT REJECTED: " + portalName);
-                return rejectedBuilder.build(portalName, receivedDate, message);
-            } else if (message.contains("accepted")) {
+                return rejectedBuilder.build(portalName, receivedDate, email);
+            case STATUS_ACCEPTED:
                 Logger.d("Parsing NEW FORMAT ACCEPTED: " + portalName);
-                return acceptedBuilder.build(portalName, receivedDate, message);
-            }
+                return acceptedBuilder.build(portalName, receivedDate, email);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * What an email's envelope says about the portal it's for
+     */
+    class Envelope {
+        /** Builder for the portal, or null if the email is in the new format */
+        final private PortalBuilder builder;
+        /** Name of the portal */
+        final private String portalName;
+        /** Date the email was delivered */
+        final private LocalDate receivedDate;
+        /** Subject line of the email */
+        final private String subject;
+
+        private Envelope(String subject, String portalName, LocalDate receivedDate,
+                PortalBuilder builder) {
+            this.builder = builder;
+            this.portalName = portalName;
+            this.receivedDate = receivedDate;
+            this.subject = subject;
+        }
+
+        /**
+         * @return name of the portal
+         */
+        String getPortalName() {
+            return portalName;
+        }
+
+        /**
+         * @return date the email was delivered
+         */
+        LocalDate getReceivedDate() {
+            return receivedDate;
+        }
+
+        /**
+         * @return subject line of the email
+         */
+        String getSubject() {
+            return subject;
+        }
+
+        /**
+         * @return true if the email is a response to a submission, false if it's a submission
+         */
+        boolean isResponse() {
+            return builder != submissionBuilder;
         }
-        return null;
     }
 }
@@ -35,7 +35,7 @@ import com.einzig.ipst2.R;
 import com.einzig.ipst2.util.Logger;
 import com.einzig.ipst2.util.PreferencesHelper;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.mail.Folder;
@@ -54,28 +54,18 @@ public class FolderGetter {
     final private SharedPreferences preferences;
     private Folder folder;
 
+    /**
+     * @param activity    Activity displaying dialogs if the folder can't be found
+     * @param folders     Every folder in the account, from a single LIST "*"
+     * @param preferences App preferences
+     */
     FolderGetter(Activity activity, Folder[] folders, SharedPreferences preferences) {
         this.activity = activity;
-        this.folders = flattenFolders(folders);
+        this.folders = Arrays.asList(folders);
         this.folder = null;
         this.preferences = preferences;
     }
 
-    private List<Folder> flattenFolders(Folder[] folders) {
-        List<Folder> folderList = new ArrayList<>();
-        for (Folder folder : folders) {
-            folderList.add(folder);
-            try {
-                Folder[] subfolders = folder.list();
-                if (subfolders.length > 0)
-                    folderList.addAll(flattenFolders(subfolders));
-            } catch (MessagingException e) {
-                Logger.e(e.toString());
-            }
-        }
-        return folderList;
-    }
-
     /**
      * Set a mail folder to look for Ingress emails
      *
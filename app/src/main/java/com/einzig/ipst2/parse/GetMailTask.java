@@ -24,33 +24,31 @@
 package com.einzig.ipst2.parse;
 
 import android.accounts.Account;
-import android.accounts.AccountManager;
 import android.app.Activity;
 import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 
 import com.einzig.ipst2.R;
-import com.einzig.ipst2.oauth.OAuth2Authenticator;
+import com.einzig.ipst2.database.DatabaseInterface;
+import com.einzig.ipst2.database.SyncState;
 import com.einzig.ipst2.util.DialogHelper;
 import com.einzig.ipst2.util.Logger;
 import com.einzig.ipst2.util.PreferencesHelper;
+import com.sun.mail.imap.IMAPFolder;
 import com.sun.mail.imap.IMAPStore;
 
 import org.joda.time.LocalDate;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import javax.mail.FetchProfile;
 import javax.mail.Folder;
+import javax.mail.FolderNotFoundException;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.search.AndTerm;
-import javax.mail.search.ComparisonTerm;
-import javax.mail.search.FromStringTerm;
-import javax.mail.search.NotTerm;
-import javax.mail.search.OrTerm;
-import javax.mail.search.ReceivedDateTerm;
-import javax.mail.search.SearchTerm;
-import javax.mail.search.SubjectTerm;
 
 import static com.einzig.ipst2.database.DatabaseInterface.DATE_FORMATTER;
 
@@ -59,49 +57,73 @@ import static com.einzig.ipst2.database.DatabaseInterface.DATE_FORMATTER;
  * @since 2017-05-28
  */
 public class GetMailTask extends AsyncTask<Void, Void, MailBundle> {
+    /** Number of days of email parsed before the rest is left to {@link HistoryBackfill} */
+    static final private int RECENT_DAYS = 90;
+
     /** GMail account used for Ingress */
     final private Account account;
     /** Parent activity of this task */
     final private Activity activity;
     /** App preferences */
     final private SharedPreferences preferences;
-    /** OAuth token */
-    final private String token;
+    /** Lowest UID searched, 0 if the folder was searched from its first message */
+    private long backfillUid;
+    /** True if the folder's whole history is parsed in date windows by a {@link WindowPool} */
+    private boolean partitioned;
 
-    public GetMailTask(Activity activity, Account account, String token) {
+    public GetMailTask(Activity activity, Account account) {
         this.account = account;
         this.activity = activity;
         this.preferences = PreferenceManager.getDefaultSharedPreferences(
                 activity);//activity.getPreferences(MainActivity.MODE_PRIVATE);
-        this.token = token;
     }
 
     @Override
     protected MailBundle doInBackground(Void... voids) {
-        OAuth2Authenticator sender = new OAuth2Authenticator();
-        IMAPStore store = sender.getIMAPStore(account.name, token);
+        MailConnection connection = MailConnection.getInstance();
+        IMAPStore store = connection.acquire(activity, account);
         if (store == null) {
             DialogHelper.showSimpleDialog(R.string.invalidtokentitle_getmailtask,
                     R.string.invalidtokenmessage_getmailtask, activity);
-            AccountManager.get(activity).invalidateAuthToken("com.google", token);
+            connection.invalidateToken(activity);
         } else {
+            IMAPFolder folder = null;
             try {
-                Folder folder = getFolder(store);
+                folder = openFolder(store);
                 if (folder != null) {
-                    folder.open(Folder.READ_ONLY);
-                    Message[] messages = searchMailbox(folder);
+                    long uidValidity = folder.getUIDValidity();
+                    long lastUid = getLastUid(folder);
+                    Message[] messages = searchMailbox(folder, uidValidity);
                     fetchMessages(folder, messages);
-                    return new MailBundle(folder, messages, store);
+                    return new MailBundle(account, folder, messages, store, uidValidity, lastUid,
+                            backfillUid, partitioned);
                 }
             } catch (MessagingException e) {
                 Logger.e(e.toString());
+                closeFolder(folder);
             }
+            connection.release(store);
         }
         return null;
     }
 
     /**
-     * Fetch envelope and content info of messages
+     * Close a folder which was opened for a search that failed, so the store can be reused
+     *
+     * @param folder Folder to close, may be null
+     */
+    private void closeFolder(IMAPFolder folder) {
+        try {
+            if (folder != null && folder.isOpen())
+                folder.close(false);
+        } catch (MessagingException e) {
+            Logger.e(e.toString());
+        }
+    }
+
+    /**
+     * Fetch envelope of messages. Their structure is fetched later by {@link BodyFetcher}, along
+     * with the text being parsed.
      *
      * @param folder   Folder messages are contained in
      * @param messages Array of messages that matched the search
@@ -110,7 +132,6 @@ public class GetMailTask extends AsyncTask<Void, Void, MailBundle> {
     private void fetchMessages(Folder folder, Message[] messages) {
         FetchProfile fp = new FetchProfile();
         fp.add(FetchProfile.Item.ENVELOPE);
-        fp.add(FetchProfile.Item.CONTENT_INFO);
         Logger.d("Fetching messages");
         try {
             folder.fetch(messages, fp);
@@ -119,17 +140,100 @@ public class GetMailTask extends AsyncTask<Void, Void, MailBundle> {
         }
     }
 
-    private Folder getFolder(IMAPStore store) throws MessagingException {
-        Folder[] folders = store.getDefaultFolder().list();
+    /**
+     * Find the folder portal emails are parsed from in the cached folder catalog
+     *
+     * @param catalog Cached catalog of folders in the account
+     * @return full name of the folder, or null if it isn't in the catalog
+     */
+    private String getCachedFolder(Map<String, Long> catalog) {
+        PreferencesHelper helper = new PreferencesHelper(activity.getApplicationContext());
+        String folderPref = helper.isInitialized(helper.folderKey()) ?
+                helper.get(helper.folderKey()) : FolderGetter.DEFAULT_FOLDER;
+        for (String name : catalog.keySet()) {
+            if (name.equalsIgnoreCase(folderPref))
+                return name;
+        }
+        return null;
+    }
+
+    /**
+     * Get the folder portal emails are parsed from. The folder is looked up in the cached folder
+     * catalog, and the folders on the server are only listed, with a single LIST "*", when it
+     * isn't there.
+     *
+     * @param store      Connected mail store
+     * @param revalidate true to list the folders on the server even if the folder is cached
+     * @return the folder, or null if it couldn't be found
+     * @throws MessagingException if the library encounters an error
+     */
+    private IMAPFolder getFolder(IMAPStore store, boolean revalidate) throws MessagingException {
+        DatabaseInterface db = new DatabaseInterface(activity);
+        String cached = revalidate ? null : getCachedFolder(db.getFolderCatalog());
+        if (cached != null) {
+            db.close();
+            Logger.d("Using cached folder " + cached);
+            return (IMAPFolder) store.getFolder(cached);
+        }
+        Folder[] folders = store.getDefaultFolder().list("*");
+        List<String> names = new ArrayList<>(folders.length);
+        for (Folder folder : folders)
+            names.add(folder.getFullName());
+        db.setFolderCatalog(names);
+        db.close();
+        Logger.d("Listed " + folders.length + " folders");
         Folder folder = new FolderGetter(activity, folders, preferences).getFolder();
         if (folder != null) {
             PreferencesHelper helper = new PreferencesHelper(activity.getApplicationContext());
             Logger.d(helper.folderKey() + " -> " + folder.getFullName());
             helper.set(helper.folderKey(), folder.getFullName());
         }
+        return (IMAPFolder) folder;
+    }
+
+    /**
+     * Open the folder portal emails are parsed from. If the cached folder no longer exists on the
+     * server the folder catalog is revalidated and the folder looked up again.
+     *
+     * @param store Connected mail store
+     * @return the open folder, or null if it couldn't be found
+     * @throws MessagingException if the library encounters an error
+     */
+    private IMAPFolder openFolder(IMAPStore store) throws MessagingException {
+        IMAPFolder folder = getFolder(store, false);
+        if (folder == null)
+            return null;
+        try {
+            folder.open(Folder.READ_ONLY);
+        } catch (FolderNotFoundException e) {
+            Logger.i(folder.getFullName() + " is gone, listing folders again");
+            folder = getFolder(store, true);
+            if (folder == null)
+                return null;
+            folder.open(Folder.READ_ONLY);
+        }
+        DatabaseInterface db = new DatabaseInterface(activity);
+        db.setFolderUidValidity(folder.getFullName(), folder.getUIDValidity());
+        db.close();
         return folder;
     }
 
+    /**
+     * Get the highest UID in a folder. It's read before the folder is searched, so messages which
+     * arrive during the parse are above it and get picked up by the next one.
+     *
+     * @param folder Open mail folder
+     * @return the highest UID in the folder, or 0 if it's empty
+     * @throws MessagingException if the library encounters an error
+     */
+    private long getLastUid(IMAPFolder folder) throws MessagingException {
+        long uidNext = folder.getUIDNext();
+        if (uidNext > 0)
+            return uidNext - 1;
+        int count = folder.getMessageCount();
+        return count > 0 ? folder.getUID(folder.getMessage(count)) : 0;
+    }
+
     /**
      * Get the last date email was parsed
      *
@@ -147,49 +251,79 @@ public class GetMailTask extends AsyncTask<Void, Void, MailBundle> {
     }
 
     /**
-     * Get SearchTerm to find relevant emails
+     * Search a mail folder for portal submission and response emails.
+     * <p>
+     * If the folder has been synced before and its UIDVALIDITY hasn't changed, only messages with
+     * a UID above the last one parsed are searched. Otherwise the UIDs from the last sync mean
+     * nothing, so the whole folder is searched again; portals already in the database are skipped
+     * when they're added. Databases from before the sync state was recorded fall back to searching
+     * from the last parse date once. The search always runs on the server, see {@link MailSearch}.
+     * </p>
+     * <p>
+     * Whenever the whole folder would be searched its history is parsed in date windows over
+     * several connections by a {@link WindowPool}. With the newest first preference on, which
+     * wins when both apply, only the last {@value #RECENT_DAYS} days are searched now. The lowest
+     * UID among them is recorded as the backfill UID, and {@link HistoryBackfill} parses
+     * everything below it through a WindowPool in the background. With the preference off the
+     * whole history is parsed in windows before the sync finishes.
+     * </p>
      *
-     * @param lastParseDate Date of previous parse for ReceivedDateTerm
-     * @param anySource     boolean that decides if the email search terms 'from' are included.
-     * @return Search term that will find all portal submission emails
+     * @param folder      Open mail folder containing portal submission emails
+     * @param uidValidity Current UIDVALIDITY of the folder
+     * @return All emails matching the search terms, in UID order
+     * @throws MessagingException if the library encounters an error
      */
-    private SearchTerm getSearchTerm(LocalDate lastParseDate, boolean anySource) {
-        SearchTerm portalTerm = new SubjectTerm("ingress portal");
-        SearchTerm reviewTerm = new SubjectTerm("portal review");
-        SearchTerm submissionTerm = new SubjectTerm("portal submission");
-        SearchTerm submittedTerm = new SubjectTerm("portal submitted");
-        SearchTerm subjectTerm = new OrTerm(new SearchTerm[]{portalTerm, reviewTerm,
-                submissionTerm, submittedTerm});
-        ReceivedDateTerm minDateTerm = new ReceivedDateTerm(ComparisonTerm.GT, lastParseDate.toDate());
-        SearchTerm invalidTerm = new NotTerm(new SubjectTerm("invalid"));
-        SearchTerm editTerm = new NotTerm(new SubjectTerm("edit"));
-        SearchTerm editsTerm = new NotTerm(new SubjectTerm("edits"));
-        SearchTerm photoTerm = new NotTerm(new SubjectTerm("photo"));
-        SearchTerm superOpsTerm = new FromStringTerm("super-ops@google.com");
-        SearchTerm iSupportTerm1 = new FromStringTerm("ingress-support@google.com");
-        SearchTerm iSupportTerm2 = new FromStringTerm("ingress-support@nianticlabs.com");
-        Logger.d("Last Parse Date: " + lastParseDate.toString());
-        SearchTerm fromTerm = new OrTerm(new SearchTerm[]
-                {superOpsTerm, iSupportTerm1, iSupportTerm2});
-        if (anySource)
-            return new AndTerm(new SearchTerm[]
-                    {subjectTerm, minDateTerm, invalidTerm, editTerm, editsTerm, photoTerm});
-        else
-            return new AndTerm(new SearchTerm[]
-                    {subjectTerm, minDateTerm, invalidTerm, editTerm, editsTerm, photoTerm,
-                            fromTerm});
+    private Message[] searchMailbox(IMAPFolder folder, long uidValidity)
+            throws MessagingException {
+        DatabaseInterface db = new DatabaseInterface(activity);
+        SyncState state = db.getSyncState(folder.getFullName());
+        db.close();
+        MailSearch search = new MailSearch(folder);
+        backfillUid = 0;
+        partitioned = false;
+        if (state != null && state.getUidValidity() == uidValidity) {
+            backfillUid = state.getBackfillUid();
+            long uidNext = folder.getUIDNext();
+            if (uidNext > 0 && uidNext <= state.getLastUid() + 1) {
+                Logger.d("No new messages since UID " + state.getLastUid());
+                return new Message[0];
+            }
+            return search.search(null, state.getLastUid());
+        }
+        PreferencesHelper helper = new PreferencesHelper(activity.getApplicationContext());
+        LocalDate lastParseDate = null;
+        if (state != null) {
+            Logger.i("UIDVALIDITY of " + folder.getFullName() + " changed, searching all email");
+        } else if (helper.isInitialized(helper.parseDateKey())) {
+            lastParseDate = getLastParseDate(helper.get(helper.parseDateKey()));
+            Logger.d("Last Parse Date: " + lastParseDate.toString());
+        }
+        if (lastParseDate != null)
+            return search.search(lastParseDate, 0);
+        if (helper.getNewestFirst())
+            return searchRecent(folder, search);
+        Logger.d("Leaving the history of " + folder.getFullName() + " to date windows");
+        partitioned = true;
+        return new Message[0];
     }
 
     /**
-     * Search a mail folder for portal submission and response emails
+     * Search the last {@value #RECENT_DAYS} days of a folder, and leave the emails before them to
+     * {@link HistoryBackfill}. Mail is split by UID rather than date, so every email from the
+     * oldest recent one onwards is parsed now even if its date is older.
      *
-     * @param folder Mail folder containing portal submission emails
-     * @return All emails matching the search terms
+     * @param folder Open mail folder containing portal submission emails
+     * @param search Search of the folder
+     * @return recent emails matching the search terms, in UID order
      * @throws MessagingException if the library encounters an error
      */
-    private Message[] searchMailbox(Folder folder) throws MessagingException {
-        PreferencesHelper helper = new PreferencesHelper(activity.getApplicationContext());
-        LocalDate lastParseDate = getLastParseDate(helper.get(helper.parseDateKey()));
-        return folder.search(getSearchTerm(lastParseDate, false));
+    private Message[] searchRecent(IMAPFolder folder, MailSearch search)
+            throws MessagingException {
+        long[] recent = search.searchUids(LocalDate.now().minusDays(RECENT_DAYS), 0, 0);
+        long boundary = recent.length > 0 ? recent[0] : getLastUid(folder) + 1;
+        backfillUid = boundary > 1 ? boundary : 0;
+        Logger.d("Searching " + folder.getFullName() + " from UID " + boundary + ", leaving " +
+                "older email to the backfill");
+        return search.search(null, boundary - 1);
     }
 }
@@ -0,0 +1,211 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.parse;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.os.Process;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+
+import com.einzig.ipst2.R;
+import com.einzig.ipst2.database.DatabaseInterface;
+import com.einzig.ipst2.database.EmailRules;
+import com.einzig.ipst2.database.SyncState;
+import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.util.Logger;
+import com.einzig.ipst2.util.PreferencesHelper;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+import org.joda.time.LocalDate;
+
+import java.util.List;
+
+import javax.mail.Folder;
+import javax.mail.MessagingException;
+
+/**
+ * Parses the email below a folder's backfill UID in the background, after a newest first sync
+ * has parsed the recent email.
+ * <p>
+ * The history is searched and parsed in date windows by a {@link WindowPool}, several windows at
+ * a time over their own connections, just like a full resync. Windows are written oldest first,
+ * each in one transaction with its end date, so a backfill which is stopped skips the windows it
+ * already wrote the next time the app starts. The backfill UID is only cleared once every window
+ * has been written. Only the backfill UID of the sync state is changed, and the portal writer
+ * doesn't care which order emails are written in, so refreshes and the {@link IdleListener} carry
+ * on as usual while the history is parsed. Progress is shown in a notification.
+ * </p>
+ */
+public class HistoryBackfill extends Thread {
+    /** ID of the progress notification */
+    static final private int NOTIFICATION_ID = 23;
+    /** The running backfill, null if there isn't one */
+    static private HistoryBackfill instance;
+
+    /** GMail account used for Ingress */
+    final private Account account;
+    /** Application context */
+    final private Context context;
+    /** Builds the progress notification */
+    final private NotificationCompat.Builder notification;
+    /** Shows the progress notification */
+    final private NotificationManagerCompat notifications;
+
+    /**
+     * @param context Application context
+     * @param account GMail account used for Ingress
+     */
+    private HistoryBackfill(Context context, Account account) {
+        super("HistoryBackfill");
+        this.account = account;
+        this.context = context;
+        this.notification = new NotificationCompat.Builder(context)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(context.getString(R.string.backfill_title))
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setOnlyAlertOnce(true);
+        this.notifications = NotificationManagerCompat.from(context);
+    }
+
+    /**
+     * Start parsing the history of the selected folder, unless it's already being parsed. The
+     * backfill stops by itself if the folder has no history left to parse.
+     *
+     * @param context Any context from the application
+     * @param account GMail account used for Ingress
+     */
+    static public synchronized void startIfNeeded(Context context, Account account) {
+        if (instance != null && instance.isAlive())
+            return;
+        instance = new HistoryBackfill(context.getApplicationContext(), account);
+        instance.start();
+    }
+
+    /**
+     * Parse the history of a folder in date windows, oldest first
+     *
+     * @param folder Open folder being backfilled
+     * @throws MessagingException if the library encounters an error
+     */
+    private void backfill(IMAPFolder folder) throws MessagingException {
+        DatabaseInterface db = new DatabaseInterface(context);
+        WindowPool windows = null;
+        try {
+            String name = folder.getFullName();
+            long uidValidity = folder.getUIDValidity();
+            SyncState state = db.getSyncState(name);
+            if (state == null || state.getUidValidity() != uidValidity ||
+                    state.getBackfillUid() == 0)
+                return;
+            Logger.i("Backfilling emails below UID " + state.getBackfillUid());
+            EmailParseTask.addMailcaps();
+            windows = new WindowPool(folder, new EmailParser(EmailRules.load(context)),
+                    BodyCache.getInstance(context), db, state.getBackfillUid());
+            windows.start(LocalDate.now(), db.getWindowProgress(name, uidValidity));
+            showProgress(0, windows.size());
+            // After a window fails its portals are still written, but nothing after it is
+            // recorded as parsed, so the next backfill starts again from that window
+            boolean complete = true;
+            for (int i = 0; i < windows.size(); ++i) {
+                LocalDate end = windows.nextEnd();
+                List<PortalSubmission> portals = windows.next();
+                if (portals == null)
+                    complete = false;
+                else if (!complete)
+                    db.addAll(portals, null);
+                else if (end != null)
+                    db.addWindow(portals, name, uidValidity, end);
+                else
+                    db.addHistory(portals, name, uidValidity, 0);
+                if (isInterrupted())
+                    return;
+                showProgress(i + 1, windows.size());
+            }
+            if (complete)
+                Logger.i("Backfill of " + name + " finished");
+            else
+                Logger.w("Backfill of " + name + " is incomplete, it resumes on the next start");
+        } catch (InterruptedException e) {
+            Logger.d("Backfill stopped while parsing");
+            interrupt();
+        } finally {
+            if (windows != null)
+                windows.shutdown();
+            db.close();
+        }
+    }
+
+    /**
+     * Close the folder being backfilled
+     *
+     * @param folder Folder to close, may be null
+     */
+    private void closeFolder(IMAPFolder folder) {
+        try {
+            if (folder != null && folder.isOpen())
+                folder.close(false);
+        } catch (MessagingException e) {
+            Logger.e(e.toString());
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        MailConnection connection = MailConnection.getInstance();
+        IMAPStore store = connection.acquire(context, account);
+        if (store == null)
+            return;
+        PreferencesHelper helper = new PreferencesHelper(context);
+        String name = helper.isInitialized(helper.folderKey()) ?
+                helper.get(helper.folderKey()) : FolderGetter.DEFAULT_FOLDER;
+        IMAPFolder folder = null;
+        try {
+            folder = (IMAPFolder) store.getFolder(name);
+            folder.open(Folder.READ_ONLY);
+            backfill(folder);
+        } catch (MessagingException e) {
+            Logger.e(e.toString());
+        } finally {
+            closeFolder(folder);
+            connection.release(store);
+            notifications.cancel(NOTIFICATION_ID);
+        }
+    }
+
+    /**
+     * Update the progress notification
+     *
+     * @param parsed Number of windows parsed so far
+     * @param total  Number of windows the history is split into
+     */
+    private void showProgress(int parsed, int total) {
+        if (total == 0)
+            return;
+        notification.setContentText(context.getString(R.string.backfill_progress, parsed, total))
+                .setProgress(total, parsed, false);
+        notifications.notify(NOTIFICATION_ID, notification.build());
+    }
+}
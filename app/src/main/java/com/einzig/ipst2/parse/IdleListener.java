@@ -0,0 +1,384 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.parse;
+
+import android.accounts.Account;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+import com.einzig.ipst2.database.DatabaseInterface;
+import com.einzig.ipst2.database.EmailRules;
+import com.einzig.ipst2.database.SyncState;
+import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.util.Logger;
+import com.einzig.ipst2.util.PreferencesHelper;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.event.MessageCountAdapter;
+import javax.mail.event.MessageCountEvent;
+
+/**
+ * Listens for new email in the background with IMAP IDLE, so portal statuses are up to date
+ * before the user refreshes.
+ * <p>
+ * The listener holds the store from {@link MailConnection} with the selected folder open in IDLE.
+ * When the server reports new messages, only the UIDs above the folder's sync state are searched,
+ * and the portal emails among them are parsed and written like they are by
+ * {@link EmailParseTask}. Nothing is ingested until a refresh has synced the folder once.
+ * </p>
+ * <p>
+ * The listener only runs while the push updates preference is on. It pauses while the battery is
+ * low and not charging or battery saver is on, and reconnects with exponential backoff when the
+ * connection fails.
+ * </p>
+ */
+public class IdleListener extends Thread {
+    /** Number of email bodies downloaded by each FETCH */
+    static final private int FETCH_BATCH_SIZE = 50;
+    /** Time between IDLE commands. RFC 2177 has clients re-issue IDLE at least every 29 minutes. */
+    static final private long IDLE_RENEW_INTERVAL = TimeUnit.MINUTES.toMillis(9);
+    /** Longest time waited before reconnecting */
+    static final private long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(30);
+    /** Lowest battery level the listener runs at while the device isn't charging */
+    static final private int MIN_BATTERY_PERCENT = 20;
+    /** Shortest time waited before reconnecting */
+    static final private long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    /** Time between checks of whether the battery allows the listener to run again */
+    static final private long PAUSED_CHECK_INTERVAL = TimeUnit.MINUTES.toMillis(15);
+    /** Longest time the device is kept awake to ingest new email */
+    static final private long WAKE_LOCK_TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+    /** The running listener, null if there isn't one */
+    static private IdleListener instance;
+
+    /** GMail account used for Ingress */
+    final private Account account;
+    /** Application context */
+    final private Context context;
+    /** App preferences */
+    final private PreferencesHelper helper;
+    /** Ends IDLE periodically and when the listener is woken up */
+    final private ScheduledExecutorService timer;
+    /** Time waited before the next reconnect */
+    private long backoff;
+    /** Folder being listened to, null while it isn't open */
+    private volatile IMAPFolder folder;
+    /** True if the server has reported messages which haven't been ingested */
+    private volatile boolean newMail;
+
+    /**
+     * @param context Application context
+     * @param account GMail account used for Ingress
+     */
+    private IdleListener(Context context, Account account) {
+        super("IdleListener");
+        this.account = account;
+        this.context = context;
+        this.helper = new PreferencesHelper(context);
+        this.timer = Executors.newSingleThreadScheduledExecutor();
+        this.backoff = MIN_BACKOFF;
+        this.newMail = false;
+    }
+
+    /**
+     * Start listening for new email if the push updates preference is on and the listener isn't
+     * already running. A listener running for a different account is stopped first.
+     *
+     * @param context Any context from the application
+     * @param account GMail account used for Ingress
+     */
+    static public synchronized void startListening(Context context, Account account) {
+        PreferencesHelper helper = new PreferencesHelper(context.getApplicationContext());
+        if (!helper.getPushUpdates())
+            return;
+        if (instance != null && instance.isAlive()) {
+            if (instance.account.equals(account))
+                return;
+            Logger.d("Account changed, restarting IDLE listener");
+            stopListening();
+        }
+        Logger.d("Starting IDLE listener");
+        instance = new IdleListener(context.getApplicationContext(), account);
+        instance.start();
+    }
+
+    /**
+     * Stop listening for new email, if the listener is running
+     */
+    static public synchronized void stopListening() {
+        if (instance != null)
+            instance.interrupt();
+        instance = null;
+    }
+
+    /**
+     * Check whether the battery allows the listener to run
+     *
+     * @return true if the device is charging, or the battery isn't low and battery saver is off
+     */
+    private boolean canRun() {
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            if (battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0)
+                return true;
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0 && level * 100 / scale < MIN_BATTERY_PERCENT)
+                return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            return !power.isPowerSaveMode();
+        }
+        return true;
+    }
+
+    /**
+     * Close the folder being listened to
+     *
+     * @param folder Folder to close
+     */
+    private void closeFolder(IMAPFolder folder) {
+        try {
+            if (folder.isOpen())
+                folder.close(false);
+        } catch (MessagingException e) {
+            Logger.e(e.toString());
+        }
+    }
+
+    /**
+     * Parse the new portal emails in the folder and write them to the database. Only messages
+     * with a UID above the folder's sync state are looked at, and the sync state is moved past
+     * them in the same transaction the portals are written in.
+     *
+     * @param folder Open folder being listened to
+     * @throws MessagingException if the library encounters an error
+     */
+    private void ingest(IMAPFolder folder) throws MessagingException {
+        DatabaseInterface db = new DatabaseInterface(context);
+        PowerManager power = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        PowerManager.WakeLock wakeLock = power.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
+                "IdleListener");
+        wakeLock.acquire(WAKE_LOCK_TIMEOUT);
+        try {
+            long uidValidity = folder.getUIDValidity();
+            SyncState state = db.getSyncState(folder.getFullName());
+            if (state == null || state.getUidValidity() != uidValidity) {
+                Logger.d(folder.getFullName() + " hasn't been synced, leaving it to a refresh");
+                return;
+            }
+            long lastUid = Math.max(folder.getUIDNext() - 1, state.getLastUid());
+            List<PortalSubmission> portals = new ArrayList<>();
+            Message[] messages = new MailSearch(folder).search(null, state.getLastUid());
+            if (messages.length > 0) {
+                FetchProfile fp = new FetchProfile();
+                fp.add(FetchProfile.Item.ENVELOPE);
+                folder.fetch(messages, fp);
+                lastUid = Math.max(lastUid, folder.getUID(messages[messages.length - 1]));
+                portals = parse(folder, db, messages);
+                if (portals == null)
+                    return;
+            }
+            db.addAll(portals, new SyncState(folder.getFullName(), uidValidity, lastUid,
+                    state.getBackfillUid()));
+        } finally {
+            db.close();
+            wakeLock.release();
+        }
+    }
+
+    @Override
+    public void interrupt() {
+        super.interrupt();
+        wake();
+    }
+
+    /**
+     * Listen to the selected folder until the listener is stopped, the battery no longer allows
+     * it to run, or the connection fails
+     *
+     * @param store Connected mail store
+     * @throws MessagingException if the library encounters an error
+     */
+    private void listen(IMAPStore store) throws MessagingException {
+        String name = helper.isInitialized(helper.folderKey()) ?
+                helper.get(helper.folderKey()) : FolderGetter.DEFAULT_FOLDER;
+        IMAPFolder opened = (IMAPFolder) store.getFolder(name);
+        opened.open(Folder.READ_ONLY);
+        opened.addMessageCountListener(new MessageCountAdapter() {
+            @Override
+            public void messagesAdded(MessageCountEvent e) {
+                newMail = true;
+                wake();
+            }
+        });
+        folder = opened;
+        backoff = MIN_BACKOFF;
+        // Catch up on anything which arrived while the listener wasn't running
+        newMail = true;
+        ScheduledFuture<?> renew = timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                wake();
+            }
+        }, IDLE_RENEW_INTERVAL, IDLE_RENEW_INTERVAL, TimeUnit.MILLISECONDS);
+        try {
+            while (!isInterrupted() && helper.getPushUpdates() && canRun()) {
+                if (newMail) {
+                    newMail = false;
+                    ingest(opened);
+                }
+                opened.idle();
+            }
+        } finally {
+            renew.cancel(false);
+            folder = null;
+            closeFolder(opened);
+        }
+    }
+
+    /**
+     * Parse portals from the emails which aren't in the database yet. A refresh running at the
+     * same time may already have written some of them, so they're checked from their envelopes
+     * before any bodies are downloaded.
+     *
+     * @param folder   Open folder containing the emails
+     * @param db       Database the portals are written to
+     * @param messages New emails, with their envelopes fetched
+     * @return portals parsed from the emails, or null if the listener was stopped
+     */
+    private List<PortalSubmission> parse(IMAPFolder folder, DatabaseInterface db,
+            Message[] messages) {
+        EmailParseTask.addMailcaps();
+        EmailParser parser = new EmailParser(EmailRules.load(context));
+        List<EmailParser.Envelope> envelopes = new ArrayList<>();
+        Message[] newMessages = EmailParseTask.findNewMessages(messages, parser, db, envelopes);
+        Logger.d("Ingesting " + newMessages.length + " portal emails");
+        ParsePool parsers = new ParsePool(folder, newMessages, envelopes, parser,
+                BodyCache.getInstance(context), FETCH_BATCH_SIZE);
+        List<PortalSubmission> portals = new ArrayList<>();
+        parsers.start();
+        try {
+            for (int i = 0; i < newMessages.length; ++i) {
+                PortalSubmission p = parsers.next();
+                if (p != null)
+                    portals.add(p);
+            }
+        } catch (InterruptedException e) {
+            Logger.d("IDLE listener stopped while parsing");
+            interrupt();
+            return null;
+        } finally {
+            parsers.shutdown();
+        }
+        return portals;
+    }
+
+    /**
+     * Wait before trying again
+     *
+     * @param millis Time to wait in milliseconds
+     * @return true if the wait finished, false if the listener was stopped
+     */
+    private boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        MailConnection connection = MailConnection.getInstance();
+        while (!isInterrupted() && helper.getPushUpdates()) {
+            if (!canRun()) {
+                Logger.d("Battery is low, pausing IDLE listener");
+                if (!pause(PAUSED_CHECK_INTERVAL))
+                    break;
+                continue;
+            }
+            IMAPStore store = connection.acquire(context, account);
+            if (store != null) {
+                try {
+                    listen(store);
+                    continue;
+                } catch (MessagingException e) {
+                    Logger.e(e.toString());
+                } finally {
+                    connection.release(store);
+                }
+            }
+            Logger.d("IDLE listener reconnecting in " + backoff / 1000 + "s");
+            if (!pause(backoff))
+                break;
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+        timer.shutdownNow();
+        Logger.d("IDLE listener stopped");
+    }
+
+    /**
+     * End the current IDLE so the listener checks for new email and whether it should keep
+     * running. Any command on the folder ends IDLE; getMessageCount sends a NOOP.
+     */
+    private void wake() {
+        if (timer.isShutdown())
+            return;
+        try {
+            timer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    IMAPFolder listening = folder;
+                    try {
+                        if (listening != null && listening.isOpen())
+                            listening.getMessageCount();
+                    } catch (MessagingException e) {
+                        Logger.e(e.toString());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The listener has already stopped
+        }
+    }
+}
@@ -23,12 +23,16 @@
 
 package com.einzig.ipst2.parse;
 
+import android.accounts.Account;
+
+import com.einzig.ipst2.database.SyncState;
 import com.einzig.ipst2.util.Logger;
 import com.sun.mail.imap.IMAPStore;
 
 import javax.mail.Folder;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.UIDFolder;
 
 /**
  * @author Ryan Porterfield
@@ -36,26 +40,78 @@ import javax.mail.MessagingException;
  */
 
 public class MailBundle {
+    /** GMail account the folder belongs to */
+    private final Account account;
+    /** Lowest UID searched, 0 if the folder was searched from its first message */
+    private final long backfillUid;
     private final Folder folder;
+    /** Highest UID in the folder when it was searched */
+    private final long lastUid;
     private final Message[] messages;
+    /** True if the folder's history is left to a {@link WindowPool} instead of being searched */
+    private final boolean partitioned;
     private final IMAPStore store;
+    /** UIDVALIDITY of the folder when it was searched */
+    private final long uidValidity;
 
-    public MailBundle(Folder folder, Message[] messages, IMAPStore store) {
+    public MailBundle(Account account, Folder folder, Message[] messages, IMAPStore store,
+            long uidValidity, long lastUid, long backfillUid, boolean partitioned) {
+        this.account = account;
+        this.backfillUid = backfillUid;
         this.folder = folder;
+        this.lastUid = lastUid;
         this.messages = messages;
+        this.partitioned = partitioned;
         this.store = store;
+        this.uidValidity = uidValidity;
     }
 
+    /**
+     * Close the folder and give the store back to the {@link MailConnection}, which keeps it
+     * open for the next refresh
+     */
     void cleanup() {
         try {
             folder.close(true);
-            store.close();
         } catch (MessagingException e) {
             Logger.e(e.toString());
         }
+        MailConnection.getInstance().release(store);
+    }
+
+    Account getAccount() {
+        return account;
+    }
+
+    Folder getFolder() {
+        return folder;
     }
 
     Message[] getMessages() {
         return messages;
     }
+
+    boolean isPartitioned() {
+        return partitioned;
+    }
+
+    /**
+     * @return sync state of the folder once every message has been parsed
+     */
+    SyncState getSyncState() {
+        return new SyncState(folder.getFullName(), uidValidity, lastUid, backfillUid);
+    }
+
+    /**
+     * Get the sync state of the folder if parsing stops after a message. Messages are parsed in
+     * UID order, so every message up to and including it has been parsed.
+     *
+     * @param lastParsed Last message which was parsed
+     * @return sync state of the folder up to lastParsed
+     * @throws MessagingException if the library encounters an error
+     */
+    SyncState getSyncState(Message lastParsed) throws MessagingException {
+        long uid = ((UIDFolder) folder).getUID(lastParsed);
+        return new SyncState(folder.getFullName(), uidValidity, uid, backfillUid);
+    }
 }
@@ -0,0 +1,360 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.parse;
+
+import android.accounts.Account;
+import android.accounts.AccountManager;
+import android.accounts.AccountManagerFuture;
+import android.accounts.AuthenticatorException;
+import android.accounts.OperationCanceledException;
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import com.einzig.ipst2.oauth.OAuth2Authenticator;
+import com.einzig.ipst2.util.Logger;
+import com.sun.mail.imap.IMAPStore;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+
+/**
+ * Keeps one authenticated connection to GMail alive between refreshes.
+ * <p>
+ * Connecting means fetching an OAuth token from the AccountManager, a TLS handshake and a SASL
+ * XOAUTH2 login, which is most of the time a refresh with no new mail takes. The token is cached
+ * until shortly before it expires, and the store is kept open for an idle window after the last
+ * user gives it back, with a NOOP sent every few minutes so the server doesn't drop it. A store
+ * which has died in the meantime is noticed when it's acquired and replaced with a new one.
+ * </p>
+ * <p>
+ * The shared store is only replaced while nobody holds it. A caller which can't use it, because
+ * it's for another account or its connection has died under another user, gets a store of its
+ * own which is closed when it's released. Tokens are fetched and stores connected without
+ * holding the lock, so a slow login doesn't hold up everybody else.
+ * </p>
+ * <p>
+ * Like {@link com.einzig.ipst2.database.DatabaseManager}, every {@link #acquire(Context, Account)}
+ * must be matched by a {@link #release(IMAPStore)}.
+ * </p>
+ */
+class MailConnection {
+    /** The scope OAuth tokens are requested for */
+    static final private String AUTH_URL = "oauth2:https://mail.google.com/";
+    /** Default time the store is kept open after it was last released */
+    static final private long DEFAULT_IDLE_WINDOW = TimeUnit.MINUTES.toMillis(10);
+    /** Time between NOOPs while the store is idle, well under the server's idle timeout */
+    static final private long KEEPALIVE_INTERVAL = TimeUnit.MINUTES.toMillis(4);
+    /** Time a token is used for. Google's tokens last an hour, this leaves a safety margin. */
+    static final private long TOKEN_LIFETIME = TimeUnit.MINUTES.toMillis(50);
+    /** The only instance of MailConnection */
+    static private MailConnection instance;
+
+    /** Runs the keepalive and closes the store once the idle window is over */
+    final private ScheduledExecutorService timer;
+    /** Account the shared store belongs to */
+    private Account account;
+    /** Closes the store at the end of the idle window */
+    private ScheduledFuture<?> idleClose;
+    /** Time the store is kept open after it was last released */
+    private long idleWindow;
+    /** Sends NOOPs while the store is idle */
+    private ScheduledFuture<?> keepalive;
+    /** Number of users currently holding the shared store */
+    private int openCount;
+    /** The shared store, null if it isn't connected */
+    private IMAPStore store;
+    /** Cached OAuth token, null if there isn't one */
+    private String token;
+    /** Account the cached token belongs to */
+    private Account tokenAccount;
+    /** Time the cached token stops being used, from {@link SystemClock#elapsedRealtime()} */
+    private long tokenExpiry;
+
+    private MailConnection() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        idleWindow = DEFAULT_IDLE_WINDOW;
+        openCount = 0;
+    }
+
+    /**
+     * Get the MailConnection for the application, creating it if it doesn't exist yet.
+     *
+     * @return the MailConnection for the application
+     */
+    static synchronized MailConnection getInstance() {
+        if (instance == null)
+            instance = new MailConnection();
+        return instance;
+    }
+
+    /**
+     * Get a connected store for an account, reusing the one from the last refresh if it's still
+     * alive. Must be called off the UI thread.
+     *
+     * @param context Activity used to ask the user for access to their account, or any other
+     *                context if the user can't be asked
+     * @param account GMail account used for Ingress
+     * @return connected store, or null if the account couldn't be logged in to
+     */
+    IMAPStore acquire(Context context, Account account) {
+        IMAPStore shared = null;
+        synchronized (this) {
+            cancelTimers();
+            if (store != null && account.equals(this.account)) {
+                shared = store;
+                ++openCount;
+            }
+        }
+        // isConnected sends a NOOP, so a connection the server has dropped is caught here
+        if (shared != null) {
+            if (shared.isConnected())
+                return shared;
+            Logger.d("Mail connection was lost, reconnecting");
+            release(shared);
+        }
+        IMAPStore connected = connect(context, account);
+        if (connected == null)
+            return null;
+        synchronized (this) {
+            if (openCount > 0)
+                return connected;
+            // Another caller may have replaced the store while this one was connecting
+            IMAPStore replaced = store;
+            store = connected;
+            this.account = account;
+            openCount = 1;
+            cancelTimers();
+            closeStore(replaced);
+        }
+        return connected;
+    }
+
+    /**
+     * Cancel the keepalive and idle close, if they're scheduled
+     */
+    private void cancelTimers() {
+        if (keepalive != null)
+            keepalive.cancel(false);
+        if (idleClose != null)
+            idleClose.cancel(false);
+        keepalive = null;
+        idleClose = null;
+    }
+
+    /**
+     * Close the shared store, if it's open
+     */
+    private void closeStore() {
+        closeStore(store);
+        store = null;
+    }
+
+    /**
+     * Close a store
+     *
+     * @param store Store to close, may be null
+     */
+    static private void closeStore(IMAPStore store) {
+        if (store == null)
+            return;
+        try {
+            store.close();
+        } catch (MessagingException e) {
+            Logger.e(e.toString());
+        }
+    }
+
+    /**
+     * Log in to the account. If the cached token is rejected it's invalidated and the login is
+     * tried once more with a new token.
+     *
+     * @param context Activity used to ask the user for access to their account, or any other
+     *                context if the user can't be asked
+     * @param account GMail account used for Ingress
+     * @return connected store, or null if the account couldn't be logged in to
+     */
+    private IMAPStore connect(Context context, Account account) {
+        OAuth2Authenticator authenticator = new OAuth2Authenticator();
+        String cached = getCachedToken(account);
+        String loginToken = cached != null ? cached : getToken(context, account);
+        if (loginToken == null)
+            return null;
+        Logger.d("Connecting to " + account.name);
+        IMAPStore connected = authenticator.getIMAPStore(account.name, loginToken);
+        if (connected == null && cached != null) {
+            Logger.d("Cached token was rejected, getting a new one");
+            invalidateToken(context);
+            loginToken = getToken(context, account);
+            if (loginToken != null)
+                connected = authenticator.getIMAPStore(account.name, loginToken);
+        }
+        return connected;
+    }
+
+    /**
+     * @param account GMail account used for Ingress
+     * @return the cached token if it belongs to account and hasn't expired, otherwise null
+     */
+    private synchronized String getCachedToken(Account account) {
+        if (token != null && account.equals(tokenAccount) &&
+                SystemClock.elapsedRealtime() < tokenExpiry)
+            return token;
+        return null;
+    }
+
+    /**
+     * Get a new OAuth token for the account from the AccountManager and cache it
+     *
+     * @param context Activity used to ask the user for access to their account, or any other
+     *                context if the user can't be asked
+     * @param account GMail account used for Ingress
+     * @return the OAuth token, or null if one couldn't be obtained
+     */
+    private String getToken(Context context, Account account) {
+        AccountManager manager = AccountManager.get(context);
+        AccountManagerFuture<Bundle> future;
+        if (context instanceof Activity)
+            future = manager.getAuthToken(account, AUTH_URL, null, (Activity) context,
+                    new AuthToken(), null);
+        else
+            future = manager.getAuthToken(account, AUTH_URL, null, false, new AuthToken(), null);
+        String newToken;
+        try {
+            newToken = future.getResult().getString(AccountManager.KEY_AUTHTOKEN);
+        } catch (IOException | AuthenticatorException | OperationCanceledException e) {
+            Logger.e(e.toString());
+            return null;
+        }
+        synchronized (this) {
+            token = newToken;
+            tokenAccount = account;
+            tokenExpiry = SystemClock.elapsedRealtime() + TOKEN_LIFETIME;
+        }
+        return newToken;
+    }
+
+    /**
+     * Tell the AccountManager the cached token is no longer valid and forget it, so the next
+     * login gets a new one
+     *
+     * @param context Context the AccountManager is used from
+     */
+    synchronized void invalidateToken(Context context) {
+        if (token != null)
+            AccountManager.get(context).invalidateAuthToken("com.google", token);
+        token = null;
+    }
+
+    /**
+     * Give a store back. Once nobody holds the shared store, it's kept alive for the idle window
+     * and then closed. Any other store is closed straight away.
+     *
+     * @param released Store returned by {@link #acquire(Context, Account)}
+     */
+    void release(IMAPStore released) {
+        synchronized (this) {
+            if (released == store) {
+                releaseShared();
+                return;
+            }
+        }
+        closeStore(released);
+    }
+
+    /**
+     * Give the shared store back, scheduling the keepalive and idle close if nobody holds it
+     */
+    private void releaseShared() {
+        if (openCount == 0) {
+            Logger.w("MailConnection#release", "Mail connection released more times than " +
+                    "acquired");
+            return;
+        }
+        --openCount;
+        if (openCount == 0 && store != null) {
+            keepalive = timer.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    sendKeepalive();
+                }
+            }, KEEPALIVE_INTERVAL, KEEPALIVE_INTERVAL, TimeUnit.MILLISECONDS);
+            scheduleIdleClose();
+        }
+    }
+
+    /**
+     * Close the store at the end of the idle window
+     */
+    private void scheduleIdleClose() {
+        idleClose = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (MailConnection.this) {
+                    if (openCount > 0)
+                        return;
+                    Logger.d("Closing idle mail connection");
+                    cancelTimers();
+                    closeStore();
+                }
+            }
+        }, idleWindow, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a NOOP on the idle store, dropping it if the connection has been lost
+     */
+    private void sendKeepalive() {
+        IMAPStore idle;
+        synchronized (this) {
+            if (store == null || openCount > 0)
+                return;
+            idle = store;
+        }
+        if (idle.isConnected())
+            return;
+        synchronized (this) {
+            if (store != idle || openCount > 0)
+                return;
+            Logger.d("Idle mail connection was lost");
+            cancelTimers();
+            closeStore();
+        }
+    }
+
+    /**
+     * Set how long the store is kept open after it was last released. Takes effect from the next
+     * release.
+     *
+     * @param idleWindow Time in milliseconds, 0 to close the store as soon as it's released
+     */
+    synchronized void setIdleWindow(long idleWindow) {
+        this.idleWindow = idleWindow;
+    }
+}
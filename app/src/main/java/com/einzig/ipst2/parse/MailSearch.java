@@ -0,0 +1,264 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.parse;
+
+import com.einzig.ipst2.util.Logger;
+import com.sun.mail.iap.Argument;
+import com.sun.mail.iap.ProtocolException;
+import com.sun.mail.iap.Response;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.protocol.IMAPProtocol;
+import com.sun.mail.imap.protocol.IMAPResponse;
+
+import org.joda.time.LocalDate;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+
+/**
+ * Searches a mail folder for portal emails with a single UID SEARCH command.
+ * <p>
+ * JavaMail falls back to searching on the client, downloading the headers of every message in the
+ * folder, whenever it can't translate a SearchTerm. The criteria are written out here instead, so
+ * the whole search always runs on the server and only the UIDs of matching messages are sent
+ * back. Servers with Gmail's extensions filter the senders through X-GM-RAW, which uses Gmail's
+ * own index; the subject criteria stay plain IMAP so they keep matching substrings.
+ * </p>
+ */
+class MailSearch {
+    /** Capability of servers which understand X-GM-RAW */
+    static final private String GMAIL_EXTENSION = "X-GM-EXT-1";
+    /** Dates in the format IMAP SEARCH expects */
+    static final private DateTimeFormatter IMAP_DATE =
+            DateTimeFormat.forPattern("d-MMM-yyyy").withLocale(Locale.US);
+    /** Addresses portal emails are sent from */
+    static final private String[] SENDERS = {"super-ops@google.com",
+            "ingress-support@google.com", "ingress-support@nianticlabs.com"};
+    /** Portal emails have at least one of these in their subject */
+    static final private String[] SUBJECTS = {"ingress portal", "portal review",
+            "portal submission", "portal submitted"};
+    /** Emails about portal edits and photos have these in their subject */
+    static final private String[] EXCLUDED_SUBJECTS = {"invalid", "edit", "edits", "photo"};
+
+    /** Folder being searched */
+    final private IMAPFolder folder;
+
+    /**
+     * @param folder Open mail folder to search
+     */
+    MailSearch(IMAPFolder folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Write criteria matching any one of several others. IMAP's OR only takes two criteria, so
+     * they're nested.
+     *
+     * @param args   Arguments of the command
+     * @param key    Search key of each criterion
+     * @param values Value of each criterion
+     */
+    static private void writeAny(Argument args, String key, String[] values) {
+        for (int i = 0; i < values.length - 1; ++i)
+            args.writeAtom("OR");
+        for (String value : values) {
+            args.writeAtom(key);
+            args.writeString(value);
+        }
+    }
+
+    /**
+     * Write the search criteria
+     *
+     * @param gmail     true if the server understands X-GM-RAW
+     * @param since     Only find emails received on or after this date, or null for any date
+     * @param before    Only find emails received before this date, or null for any date
+     * @param afterUid  Only find emails with a UID above this, or 0 for any UID
+     * @param beforeUid Only find emails with a UID below this, or 0 for any UID
+     * @return arguments of the UID SEARCH command
+     */
+    private Argument compile(boolean gmail, LocalDate since, LocalDate before, long afterUid,
+            long beforeUid) {
+        Argument args = new Argument();
+        if (afterUid > 0 || beforeUid > 0) {
+            args.writeAtom("UID");
+            args.writeAtom((afterUid + 1) + ":" + (beforeUid > 0 ? beforeUid - 1 : "*"));
+        }
+        if (since != null) {
+            args.writeAtom("SINCE");
+            args.writeAtom(IMAP_DATE.print(since));
+        }
+        if (before != null) {
+            args.writeAtom("BEFORE");
+            args.writeAtom(IMAP_DATE.print(before));
+        }
+        if (gmail) {
+            StringBuilder raw = new StringBuilder("from:(");
+            for (int i = 0; i < SENDERS.length; ++i)
+                raw.append(i == 0 ? "" : " OR ").append(SENDERS[i]);
+            args.writeAtom("X-GM-RAW");
+            args.writeString(raw.append(')').toString());
+        } else {
+            writeAny(args, "FROM", SENDERS);
+        }
+        writeAny(args, "SUBJECT", SUBJECTS);
+        for (String subject : EXCLUDED_SUBJECTS) {
+            args.writeAtom("NOT");
+            args.writeAtom("SUBJECT");
+            args.writeString(subject);
+        }
+        return args;
+    }
+
+    /**
+     * Search the folder for portal emails
+     *
+     * @param since    Only find emails received on or after this date, or null for any date
+     * @param afterUid Only find emails with a UID above this, or 0 for any UID
+     * @return the emails found, in UID order
+     * @throws MessagingException if the library encounters an error or the server can't run the
+     *                            search
+     */
+    Message[] search(LocalDate since, long afterUid) throws MessagingException {
+        return search(since, afterUid, 0);
+    }
+
+    /**
+     * Search the folder for portal emails in a range of UIDs
+     *
+     * @param since     Only find emails received on or after this date, or null for any date
+     * @param afterUid  Only find emails with a UID above this, or 0 for any UID
+     * @param beforeUid Only find emails with a UID below this, or 0 for any UID
+     * @return the emails found, in UID order
+     * @throws MessagingException if the library encounters an error or the server can't run the
+     *                            search
+     */
+    Message[] search(LocalDate since, long afterUid, long beforeUid) throws MessagingException {
+        return toMessages(searchUids(since, null, afterUid, beforeUid));
+    }
+
+    /**
+     * Search the folder for portal emails received in a window of dates
+     *
+     * @param since     Only find emails received on or after this date, or null for any date
+     * @param before    Only find emails received before this date, or null for any date
+     * @param beforeUid Only find emails with a UID below this, or 0 for any UID
+     * @return the emails found, in UID order
+     * @throws MessagingException if the library encounters an error or the server can't run the
+     *                            search
+     */
+    Message[] search(LocalDate since, LocalDate before, long beforeUid)
+            throws MessagingException {
+        return toMessages(searchUids(since, before, 0, beforeUid));
+    }
+
+    /**
+     * Search the folder for the UIDs of portal emails, without creating their messages
+     *
+     * @param since     Only find emails received on or after this date, or null for any date
+     * @param afterUid  Only find emails with a UID above this, or 0 for any UID
+     * @param beforeUid Only find emails with a UID below this, or 0 for any UID
+     * @return UIDs of the emails found, in ascending order
+     * @throws MessagingException if the library encounters an error or the server can't run the
+     *                            search
+     */
+    long[] searchUids(LocalDate since, long afterUid, long beforeUid) throws MessagingException {
+        return searchUids(since, null, afterUid, beforeUid);
+    }
+
+    /**
+     * Search the folder for the UIDs of portal emails
+     *
+     * @param since     Only find emails received on or after this date, or null for any date
+     * @param before    Only find emails received before this date, or null for any date
+     * @param afterUid  Only find emails with a UID above this, or 0 for any UID
+     * @param beforeUid Only find emails with a UID below this, or 0 for any UID
+     * @return UIDs of the emails found, in ascending order
+     * @throws MessagingException if the library encounters an error or the server can't run the
+     *                            search
+     */
+    private long[] searchUids(final LocalDate since, final LocalDate before, final long afterUid,
+            final long beforeUid) throws MessagingException {
+        if (beforeUid > 0 && beforeUid <= afterUid + 1)
+            return new long[0];
+        long[] uids = (long[]) folder.doCommand(new IMAPFolder.ProtocolCommand() {
+            @Override
+            public Object doCommand(IMAPProtocol protocol) throws ProtocolException {
+                boolean gmail = protocol.hasCapability(GMAIL_EXTENSION);
+                Response[] responses = protocol.command("UID SEARCH",
+                        compile(gmail, since, before, afterUid, beforeUid));
+                Response result = responses[responses.length - 1];
+                List<Long> matches = new ArrayList<>();
+                if (result.isOK()) {
+                    for (int i = 0; i < responses.length; ++i) {
+                        if (!(responses[i] instanceof IMAPResponse)
+                                || !((IMAPResponse) responses[i]).keyEquals("SEARCH"))
+                            continue;
+                        long uid;
+                        while ((uid = responses[i].readLong()) != -1) {
+                            // n:* always matches the newest message, even when its UID is below n
+                            if (uid > afterUid && (beforeUid == 0 || uid < beforeUid))
+                                matches.add(uid);
+                        }
+                        responses[i] = null;
+                    }
+                }
+                protocol.notifyResponseHandlers(responses);
+                protocol.handleResult(result);
+                Logger.d((gmail ? "X-GM-RAW" : "IMAP") + " search of " + folder.getFullName()
+                        + " matched " + matches.size() + " emails");
+                long[] uids = new long[matches.size()];
+                for (int i = 0; i < uids.length; ++i)
+                    uids[i] = matches.get(i);
+                return uids;
+            }
+        });
+        Arrays.sort(uids);
+        return uids;
+    }
+
+    /**
+     * Get the messages with some UIDs
+     *
+     * @param uids UIDs of the messages, in ascending order
+     * @return the messages which still exist, in UID order
+     * @throws MessagingException if the library encounters an error
+     */
+    private Message[] toMessages(long[] uids) throws MessagingException {
+        if (uids.length == 0)
+            return new Message[0];
+        List<Message> messages = new ArrayList<>(uids.length);
+        for (Message message : folder.getMessagesByUID(uids)) {
+            if (message != null)
+                messages.add(message);
+        }
+        return messages.toArray(new Message[messages.size()]);
+    }
+}
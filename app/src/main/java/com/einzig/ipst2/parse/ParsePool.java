@@ -0,0 +1,175 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.parse;
+
+import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.util.Logger;
+import com.sun.mail.imap.IMAPFolder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.mail.Message;
+import javax.mail.Part;
+
+/**
+ * Parses emails on one thread per core while their bodies are downloaded by a
+ * {@link BodyFetcher}. Portals are handed back by {@link #next()} in the same order as the emails,
+ * so the caller can write them to the database from a single thread.
+ * <p>
+ * Emails in the {@link BodyCache} are parsed from their cached text and never downloaded. The
+ * text of every other email is added to the cache as it's parsed.
+ * </p>
+ */
+class ParsePool {
+    /** Number of emails queued for each parsing thread, so none of them waits on the others */
+    static final private int JOBS_PER_THREAD = 4;
+
+    /** Cache the text of the emails is read from and written to */
+    final private BodyCache cache;
+    /** True for each email which was cached when the pool was made, so it isn't downloaded */
+    final private boolean[] cached;
+    /** Envelope of each email, in the same order as the emails */
+    final private List<EmailParser.Envelope> envelopes;
+    /** Threads parsing emails */
+    final private ExecutorService executor;
+    /** Downloads the bodies of the emails */
+    final private BodyFetcher fetcher;
+    /** Emails being parsed, oldest first */
+    final private Queue<Future<PortalSubmission>> jobs;
+    /** Cache key of each email */
+    final private String[] keys;
+    /** Maximum number of emails being parsed at once */
+    final private int maxJobs;
+    /** Emails being parsed */
+    final private Message[] messages;
+    /** Does the actual parsing of emails */
+    final private EmailParser parser;
+    /** Number of emails handed to the executor */
+    private int submitted;
+
+    /**
+     * @param folder         Open folder containing the emails
+     * @param messages       Emails being parsed
+     * @param envelopes      Envelope of each email
+     * @param parser         Parser shared by every thread, which has no state of its own
+     * @param cache          Cache the text of the emails is read from and written to
+     * @param fetchBatchSize Number of email bodies downloaded by each FETCH
+     */
+    ParsePool(IMAPFolder folder, Message[] messages, List<EmailParser.Envelope> envelopes,
+            EmailParser parser, BodyCache cache, int fetchBatchSize) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.cache = cache;
+        this.cached = new boolean[messages.length];
+        this.envelopes = envelopes;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.jobs = new ArrayDeque<>();
+        this.keys = new String[messages.length];
+        this.maxJobs = threads * JOBS_PER_THREAD;
+        this.messages = messages;
+        this.parser = parser;
+        this.submitted = 0;
+        List<Message> misses = new ArrayList<>();
+        for (int i = 0; i < messages.length; ++i) {
+            keys[i] = BodyCache.key(folder, messages[i]);
+            cached[i] = cache.contains(keys[i]);
+            if (!cached[i])
+                misses.add(messages[i]);
+        }
+        Logger.d((messages.length - misses.size()) + " of " + messages.length +
+                " emails are cached");
+        this.fetcher = new BodyFetcher(folder, misses.toArray(new Message[misses.size()]),
+                fetchBatchSize);
+    }
+
+    /**
+     * Wait for the next email to be parsed
+     *
+     * @return the portal from the next email, or null if it couldn't be parsed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    PortalSubmission next() throws InterruptedException {
+        while (submitted < envelopes.size() && jobs.size() < maxJobs) {
+            // Only the emails which weren't cached are being downloaded, in the same order
+            submit(submitted, cached[submitted] ? null : fetcher.take());
+            ++submitted;
+        }
+        try {
+            return jobs.remove().get();
+        } catch (ExecutionException e) {
+            Logger.e(e.getCause().toString());
+            return null;
+        }
+    }
+
+    /**
+     * Stop downloading and parsing emails, and wait for the FETCH in progress to finish so the
+     * folder isn't closed underneath it.
+     */
+    void shutdown() {
+        executor.shutdownNow();
+        fetcher.interrupt();
+        try {
+            fetcher.join();
+        } catch (InterruptedException e) {
+            Logger.e(e.toString());
+        }
+    }
+
+    /**
+     * Start downloading email bodies
+     */
+    void start() {
+        fetcher.start();
+    }
+
+    /**
+     * Parse an email on one of the executor's threads
+     *
+     * @param index Index of the email
+     * @param body  Body of the email, or null to read it from the cache
+     */
+    private void submit(final int index, final Part body) {
+        jobs.add(executor.submit(new Callable<PortalSubmission>() {
+            @Override
+            public PortalSubmission call() {
+                EmailParser.Envelope envelope = envelopes.get(index);
+                if (body == null) {
+                    BodyCache.Entry entry = cache.get(keys[index]);
+                    if (entry != null)
+                        return parser.getPortal(envelope, entry.getText());
+                }
+                // An email removed from the cache since it was checked is downloaded on its own
+                String text = parser.getText(body != null ? body : messages[index]);
+                cache.put(keys[index], envelope.getSubject(), envelope.getReceivedDate(), text);
+                return parser.getPortal(envelope, text);
+            }
+        }));
+    }
+}
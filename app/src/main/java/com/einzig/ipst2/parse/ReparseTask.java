@@ -0,0 +1,120 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.parse;
+
+import android.app.ProgressDialog;
+import android.os.AsyncTask;
+
+import com.einzig.ipst2.R;
+import com.einzig.ipst2.activities.SettingsActivity;
+import com.einzig.ipst2.database.DatabaseInterface;
+import com.einzig.ipst2.database.EmailRules;
+import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.util.Logger;
+import com.einzig.ipst2.util.PreferencesHelper;
+import com.einzig.ipst2.util.ThemeHelper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds the portal database from the emails in the {@link BodyCache}, without going to the
+ * mail server.
+ * <p>
+ * The portals and sync state are cleared and every cached email is parsed again with the current
+ * rules. The last parse date is cleared too, so the refresh which follows searches the whole
+ * folder; emails whose portals were rebuilt from the cache are skipped by it, and only the emails
+ * which weren't cached are downloaded.
+ * </p>
+ */
+public class ReparseTask extends AsyncTask<Void, Integer, Integer> {
+    /** Number of portals written in each transaction */
+    static final private int BATCH_SIZE = 50;
+
+    /** The calling activity, which is finished once the database is rebuilt */
+    final private SettingsActivity activity;
+    /** Display reparsing progress */
+    final private ProgressDialog dialog;
+
+    /**
+     * @param activity The calling activity
+     */
+    public ReparseTask(SettingsActivity activity) {
+        this.activity = activity;
+        this.dialog = new ProgressDialog(activity, ThemeHelper.getDialogTheme(activity));
+        dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        dialog.setTitle(activity.getString(R.string.reparsing_email));
+        dialog.setCancelable(false);
+        dialog.setCanceledOnTouchOutside(false);
+    }
+
+    @Override
+    protected Integer doInBackground(Void... voids) {
+        BodyCache cache = BodyCache.getInstance(activity);
+        File[] files = cache.files();
+        Logger.i("Reparsing " + files.length + " cached emails");
+        EmailParser parser = new EmailParser(EmailRules.load(activity));
+        DatabaseInterface db = new DatabaseInterface(activity);
+        db.deleteAll();
+        PreferencesHelper helper = new PreferencesHelper(activity);
+        helper.set(helper.parseDateKey(), helper.nullKey());
+        List<PortalSubmission> batch = new ArrayList<>(BATCH_SIZE);
+        int count = 0;
+        for (int i = 0; i < files.length; i++) {
+            BodyCache.Entry entry = cache.read(files[i]);
+            if (entry != null) {
+                EmailParser.Envelope envelope = parser.getEnvelope(entry.getSubject(),
+                        entry.getReceivedDate());
+                PortalSubmission p = parser.getPortal(envelope, entry.getText());
+                if (p != null)
+                    batch.add(p);
+            }
+            if (batch.size() == BATCH_SIZE || i == files.length - 1) {
+                count += db.addAll(batch, null);
+                batch.clear();
+            }
+            publishProgress(i, files.length);
+        }
+        db.close();
+        return count;
+    }
+
+    @Override
+    protected void onPostExecute(Integer count) {
+        Logger.i("Rebuilt " + count + " portals from the body cache");
+        dialog.dismiss();
+        activity.clearedData();
+    }
+
+    @Override
+    protected void onPreExecute() {
+        dialog.show();
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... progress) {
+        dialog.setMax(progress[1]);
+        dialog.setProgress(progress[0] + 1);
+    }
+}
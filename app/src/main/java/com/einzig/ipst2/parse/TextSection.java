@@ -0,0 +1,129 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.parse;
+
+import com.sun.mail.imap.protocol.BODYSTRUCTURE;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.mail.MessagingException;
+import javax.mail.Part;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeUtility;
+
+/**
+ * The section of an email holding its text, found from the email's BODYSTRUCTURE, so it can be
+ * downloaded without the rest of the email's parts.
+ */
+class TextSection {
+    /** Charset used when the section doesn't name one */
+    static final private String DEFAULT_CHARSET = "UTF-8";
+
+    /** Charset of the text */
+    final private String charset;
+    /** Content-Transfer-Encoding of the section */
+    final private String encoding;
+    /** IMAP section specifier, like 1 or 1.2 */
+    final private String section;
+    /** Subtype of the text, either html or plain */
+    final private String subtype;
+
+    /**
+     * @param section   IMAP section specifier
+     * @param structure Structure of the section
+     */
+    private TextSection(String section, BODYSTRUCTURE structure) {
+        String charset = structure.cParams == null ? null : structure.cParams.get("charset");
+        this.charset = charset == null ? DEFAULT_CHARSET : MimeUtility.javaCharset(charset);
+        this.encoding = structure.encoding;
+        this.section = section;
+        this.subtype = structure.subtype.toLowerCase();
+    }
+
+    /**
+     * Find the section of an email to parse. Like {@link EmailParser} html text is preferred over
+     * plain text.
+     *
+     * @param structure BODYSTRUCTURE of the email
+     * @return the section holding the email's text, or null if it doesn't have one
+     */
+    static TextSection find(BODYSTRUCTURE structure) {
+        TextSection html = find(structure, "", "html");
+        return html != null ? html : find(structure, "", "plain");
+    }
+
+    /**
+     * Find the first text section of a subtype, depth first
+     *
+     * @param structure Structure of the part being searched
+     * @param prefix    Section specifier of the part followed by a '.', or empty for the email
+     * @param subtype   Subtype of text being searched for
+     * @return the first section of text with subtype, or null if there isn't one
+     */
+    static private TextSection find(BODYSTRUCTURE structure, String prefix, String subtype) {
+        if (structure.isMulti()) {
+            for (int i = 0; i < structure.bodies.length; ++i) {
+                TextSection section = find(structure.bodies[i], prefix + (i + 1) + ".", subtype);
+                if (section != null)
+                    return section;
+            }
+        } else if (structure.isSingle() && "text".equalsIgnoreCase(structure.type) &&
+                subtype.equalsIgnoreCase(structure.subtype) &&
+                !Part.ATTACHMENT.equalsIgnoreCase(structure.disposition)) {
+            // The body of an email which isn't multipart is section 1
+            String section = prefix.isEmpty() ? "1" : prefix.substring(0, prefix.length() - 1);
+            return new TextSection(section, structure);
+        }
+        return null;
+    }
+
+    /**
+     * @return IMAP section specifier, like 1 or 1.2
+     */
+    String getSection() {
+        return section;
+    }
+
+    /**
+     * Decode the downloaded section into a part which can be read like the email it came from
+     *
+     * @param data Section as sent by the server, still transfer encoded
+     * @return text part holding the decoded section
+     * @throws IOException        if the section can't be decoded
+     * @throws MessagingException if the library encounters an error
+     */
+    Part toPart(InputStream data) throws IOException, MessagingException {
+        InputStream in = encoding == null ? data : MimeUtility.decode(data, encoding);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1)
+            out.write(buffer, 0, count);
+        String type = "text/" + subtype + "; charset=" + MimeUtility.mimeCharset(charset);
+        MimeBodyPart part = new MimeBodyPart();
+        part.setContent(out.toString(charset), type);
+        part.setHeader("Content-Type", type);
+        return part;
+    }
+}
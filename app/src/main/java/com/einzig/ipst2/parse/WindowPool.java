@@ -0,0 +1,272 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+
+package com.einzig.ipst2.parse;
+
+import com.einzig.ipst2.database.DatabaseInterface;
+import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.util.Logger;
+import com.sun.mail.imap.IMAPFolder;
+
+import org.joda.time.LocalDate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.FetchProfile;
+import javax.mail.Folder;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+
+/**
+ * Searches and parses a folder's whole history in date windows, several windows at a time. Both
+ * a full resync and the {@link HistoryBackfill} use it, the backfill only searching the emails
+ * below its backfill UID.
+ * <p>
+ * The history is split into quarters. Each window is searched, has its envelopes fetched and its
+ * bodies downloaded and parsed by a {@link ParsePool} over its own connection, so a full resync
+ * isn't limited to one round trip at a time. The folder the pool is given is one of the
+ * connections and the others are opened from the same store; Gmail allows 15 connections per
+ * account, and {@link #MAX_CONNECTIONS} leaves plenty for the {@link IdleListener} and refreshes.
+ * </p>
+ * <p>
+ * Portals are handed back by {@link #next()} one window at a time, oldest first, so the caller
+ * still writes them to the database from a single thread. The windows always start on the same
+ * days, so a resync which was interrupted can skip the windows it already wrote.
+ * </p>
+ */
+class WindowPool {
+    /** Number of email bodies downloaded by each FETCH */
+    static final private int FETCH_BATCH_SIZE = 50;
+    /** Ingress launched in October 2012, so no window starts before then */
+    static final private LocalDate LAUNCH_DATE = new LocalDate(2012, 10, 1);
+    /** Most connections open to the server at once, including the folder the pool is given */
+    static final private int MAX_CONNECTIONS = 3;
+    /** Number of months in each window */
+    static final private int WINDOW_MONTHS = 3;
+
+    /** Only emails with a UID below this are parsed, or 0 for any UID */
+    final private long beforeUid;
+    /** Cache the text of the emails is read from and written to */
+    final private BodyCache cache;
+    /** Database used to skip emails which are already parsed */
+    final private DatabaseInterface db;
+    /** Threads searching and parsing windows, one per connection */
+    final private ExecutorService executor;
+    /** Folder the pool was given, which is closed by its owner */
+    final private IMAPFolder folder;
+    /** Open folders which aren't being used by a window */
+    final private BlockingQueue<IMAPFolder> idle;
+    /** Day after each window being parsed, null for the last, in the same order as windows */
+    final private Queue<LocalDate> ends;
+    /** Folders opened by the pool */
+    final private List<IMAPFolder> opened;
+    /** Does the actual parsing of emails */
+    final private EmailParser parser;
+    /** Windows being parsed, oldest first */
+    final private Queue<Future<List<PortalSubmission>>> windows;
+    /** Number of windows the history is split into */
+    private int size;
+
+    /**
+     * @param folder    Open folder being parsed
+     * @param parser    Parser shared by every window
+     * @param cache     Cache the text of the emails is read from and written to
+     * @param db        Database used to skip emails which are already parsed
+     * @param beforeUid Only parse emails with a UID below this, or 0 for any UID
+     */
+    WindowPool(IMAPFolder folder, EmailParser parser, BodyCache cache, DatabaseInterface db,
+            long beforeUid) {
+        this.beforeUid = beforeUid;
+        this.cache = cache;
+        this.db = db;
+        this.ends = new LinkedList<>();
+        this.executor = Executors.newFixedThreadPool(MAX_CONNECTIONS);
+        this.folder = folder;
+        this.idle = new LinkedBlockingQueue<>();
+        this.opened = new ArrayList<>();
+        this.parser = parser;
+        this.windows = new ArrayDeque<>();
+        this.size = 0;
+        idle.add(folder);
+    }
+
+    /**
+     * Take an open folder which isn't being used, opening another connection if there isn't one
+     *
+     * @return open folder
+     * @throws MessagingException if the library encounters an error
+     */
+    private IMAPFolder borrow() throws MessagingException {
+        IMAPFolder borrowed = idle.poll();
+        if (borrowed != null)
+            return borrowed;
+        borrowed = (IMAPFolder) folder.getStore().getFolder(folder.getFullName());
+        borrowed.open(Folder.READ_ONLY);
+        synchronized (opened) {
+            opened.add(borrowed);
+            Logger.d("Opened connection " + (opened.size() + 1) + " to " + folder.getFullName());
+        }
+        return borrowed;
+    }
+
+    /**
+     * Wait for the next window to be parsed
+     *
+     * @return portals from the next window, or null if it couldn't be searched or parsed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    List<PortalSubmission> next() throws InterruptedException {
+        ends.remove();
+        try {
+            return windows.remove().get();
+        } catch (ExecutionException e) {
+            Logger.e(e.getCause().toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return day after the window {@link #next()} returns, or null if it's the last window
+     */
+    LocalDate nextEnd() {
+        return ends.peek();
+    }
+
+    /**
+     * Search and parse the emails in a window
+     *
+     * @param since  First day of the window, or null for any date before it ends
+     * @param before Day after the window, or null for any date after it starts
+     * @return portals parsed from the new emails in the window
+     * @throws InterruptedException if the pool is shut down while parsing
+     * @throws MessagingException   if the library encounters an error
+     */
+    private List<PortalSubmission> parseWindow(LocalDate since, LocalDate before)
+            throws InterruptedException, MessagingException {
+        IMAPFolder borrowed = borrow();
+        try {
+            Message[] messages = new MailSearch(borrowed).search(since, before, beforeUid);
+            FetchProfile fp = new FetchProfile();
+            fp.add(FetchProfile.Item.ENVELOPE);
+            borrowed.fetch(messages, fp);
+            List<EmailParser.Envelope> envelopes = new ArrayList<>();
+            Message[] newMessages = EmailParseTask.findNewMessages(messages, parser, db,
+                    envelopes);
+            ParsePool parsers = new ParsePool(borrowed, newMessages, envelopes, parser, cache,
+                    FETCH_BATCH_SIZE);
+            List<PortalSubmission> portals = new ArrayList<>();
+            parsers.start();
+            try {
+                for (int i = 0; i < newMessages.length; ++i) {
+                    PortalSubmission p = parsers.next();
+                    if (p != null)
+                        portals.add(p);
+                }
+            } finally {
+                parsers.shutdown();
+            }
+            Logger.d("Window from " + since + " parsed " + portals.size() + " portals");
+            return portals;
+        } finally {
+            idle.add(borrowed);
+        }
+    }
+
+    /**
+     * Stop searching and parsing, and close the connections the pool opened
+     */
+    void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Logger.e(e.toString());
+        }
+        synchronized (opened) {
+            for (IMAPFolder folder : opened) {
+                try {
+                    if (folder.isOpen())
+                        folder.close(false);
+                } catch (MessagingException e) {
+                    Logger.e(e.toString());
+                }
+            }
+            opened.clear();
+        }
+    }
+
+    /**
+     * @return number of windows the history is split into
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Split the history into windows and start parsing them. The first window has no start date
+     * and the last has no end date, so every email is in exactly one window.
+     *
+     * @param today        Last day of the history
+     * @param parsedBefore Day every email before has already been parsed, or null to parse the
+     *                     whole history. Windows ending on or before it are skipped.
+     */
+    void start(LocalDate today, LocalDate parsedBefore) {
+        LocalDate since = null;
+        LocalDate before = LAUNCH_DATE.plusMonths(WINDOW_MONTHS);
+        while (since == null || !since.isAfter(today)) {
+            if (parsedBefore == null || before.isAfter(parsedBefore) || before.isAfter(today))
+                submit(since, before.isAfter(today) ? null : before);
+            since = before;
+            before = before.plusMonths(WINDOW_MONTHS);
+        }
+        Logger.d("Parsing history in " + size + " windows");
+    }
+
+    /**
+     * Parse a window on one of the executor's threads
+     *
+     * @param since  First day of the window, or null for any date before it ends
+     * @param before Day after the window, or null for any date after it starts
+     */
+    private void submit(final LocalDate since, final LocalDate before) {
+        ends.add(before);
+        windows.add(executor.submit(new Callable<List<PortalSubmission>>() {
+            @Override
+            public List<PortalSubmission> call() throws Exception {
+                return parseWindow(since, before);
+            }
+        }));
+        ++size;
+    }
+}
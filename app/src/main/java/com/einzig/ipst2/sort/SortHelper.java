@@ -23,37 +23,29 @@ package com.einzig.ipst2.sort;
 
 import android.content.Context;
 
-import com.einzig.ipst2.adapters.ListItemAdapter_PS;
-import com.einzig.ipst2.portal.PortalSubmission;
+import com.einzig.ipst2.database.PagedPortalList;
 import com.einzig.ipst2.util.PreferencesHelper;
 
-import java.util.Collections;
-import java.util.Vector;
-
 /**
  * Created by Steven Foskett on 7/12/2017.
  */
 
 public class SortHelper {
-    /* Method to sort the list based on settings the user has saved */
-    public static void sortList(Vector<? extends PortalSubmission> psList, Context context) {
+    /* Method to get the order for a PagedPortalList based on settings the user has saved */
+    public static int getSortOrder(Context context) {
         PreferencesHelper helper = new PreferencesHelper(context);
         String sortOptionValue = helper.get(helper.sortKey());
-        if (sortOptionValue.equals(helper.responseDateDescSort())) {
-            Collections.sort(psList, new ListItemAdapter_PS.SortPortalSubmissions_dateresp());
-        } else if (sortOptionValue.equals(helper.submissionDateSort())) {
-            Collections.sort(psList, new ListItemAdapter_PS.SortPortalSubmissions_datesub());
-        } else if (sortOptionValue.equals(helper.submissionDateDescSort())) {
-            Collections.sort(psList, new ListItemAdapter_PS.SortPortalSubmissions_datesub());
-            Collections.reverse(psList);
-        } else if (sortOptionValue.equals(helper.alphaNumericSort())) {
-            Collections.sort(psList, new ListItemAdapter_PS.SortPortalSubmissions_alph());
-        } else if (sortOptionValue.equals(helper.alphaNumericDescSort())) {
-            Collections.sort(psList, new ListItemAdapter_PS.SortPortalSubmissions_alph());
-            Collections.reverse(psList);
-        } else {
-            Collections.sort(psList, new ListItemAdapter_PS.SortPortalSubmissions_dateresp());
-            Collections.reverse(psList);
-        }
+        if (sortOptionValue.equals(helper.responseDateDescSort()))
+            return PagedPortalList.SORT_RESPONSE_DATE_DESC;
+        else if (sortOptionValue.equals(helper.submissionDateSort()))
+            return PagedPortalList.SORT_SUBMISSION_DATE;
+        else if (sortOptionValue.equals(helper.submissionDateDescSort()))
+            return PagedPortalList.SORT_SUBMISSION_DATE_DESC;
+        else if (sortOptionValue.equals(helper.alphaNumericSort()))
+            return PagedPortalList.SORT_NAME;
+        else if (sortOptionValue.equals(helper.alphaNumericDescSort()))
+            return PagedPortalList.SORT_NAME_DESC;
+        else
+            return PagedPortalList.SORT_RESPONSE_DATE;
     }
 }
@@ -81,8 +81,7 @@ public class CSVExportHelper extends AsyncTask<String, String, String> {
                 Logger.d(file.getAbsolutePath());
                 CSVWriter mWriter = new CSVWriter(new FileWriter(file));
                 Vector<? extends PortalSubmission> subList =
-                        db.getAllPortals(helper.isSeerOnly());
-                SortHelper.sortList(subList, activity);
+                        db.getAllPortals(helper.isSeerOnly(), SortHelper.getSortOrder(activity));
 
                 String[] mExportChartHeaders = {
                         "Portal Name",
@@ -28,12 +28,16 @@ import android.os.AsyncTask;
 import com.einzig.ipst2.activities.PSImportActivity;
 import com.einzig.ipst2.database.DatabaseInterface;
 import com.einzig.ipst2.database.PortalBuilder;
+import com.einzig.ipst2.portal.PortalSubmission;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 
 /*
  * Created by Steven Foskett on 7/14/2017.
@@ -58,23 +62,17 @@ public class CSVImportHelper extends AsyncTask<Void, Integer, Void> {
             helper.set(helper.parseDateKey(), helper.nullKey());
             db.deleteAll();
 
-            double lengthPerPercent = 100.0 / importFile.length();
-            long readLength = 0;
-
-            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-                String[] tokens = line.split(",");
-                readLength += line.length();
-                db.add(PortalBuilder.buildFromCSV(tokens));
-                Logger.d("Publishing Progress: " + lengthPerPercent + " - " + readLength + " -- "
-                        + (int) Math.round(lengthPerPercent * readLength));
-                publishProgress((int) Math.round(lengthPerPercent * readLength));
-            }
+            List<Integer> counts = db.addAll(new CSVPortalIterator(reader),
+                    DatabaseInterface.DEFAULT_BATCH_SIZE);
+            Logger.d("importFromCSV", "Imported portals in " + counts.size() + " batches");
             reader.close();
+            db.close();
         } catch (IOException e) {
             Logger.e("importFromCSV", e.toString());
         }
         return null;
     }
+
     @Override
     protected void onProgressUpdate(Integer... progress) {
         dialog.setProgress(progress[0] + 1);
@@ -86,4 +84,54 @@ public class CSVImportHelper extends AsyncTask<Void, Integer, Void> {
         if (activity instanceof PSImportActivity)
             ((PSImportActivity) activity).finishedParsing();
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads portals from the CSV file one line at a time so they can be written to the database
+     * in batches, publishing progress as lines are read.
+     */
+    private class CSVPortalIterator implements Iterator<PortalSubmission> {
+        final private BufferedReader reader;
+        final private double lengthPerPercent;
+        private String nextLine;
+        private long readLength;
+
+        CSVPortalIterator(BufferedReader reader) {
+            this.reader = reader;
+            this.lengthPerPercent = 100.0 / importFile.length();
+            this.readLength = 0;
+            this.nextLine = readLine();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextLine != null;
+        }
+
+        @Override
+        public PortalSubmission next() {
+            if (nextLine == null)
+                throw new NoSuchElementException();
+            String line = nextLine;
+            readLength += line.length();
+            Logger.d("Publishing Progress: " + lengthPerPercent + " - " + readLength + " -- "
+                    + (int) Math.round(lengthPerPercent * readLength));
+            publishProgress((int) Math.round(lengthPerPercent * readLength));
+            nextLine = readLine();
+            return PortalBuilder.buildFromCSV(line.split(","));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private String readLine() {
+            try {
+                return reader.readLine();
+            } catch (IOException e) {
+                Logger.e("importFromCSV", e.toString());
+                return null;
+            }
+        }
+    }
+}
@@ -142,6 +142,24 @@ public class PreferencesHelper {
         return preferences.getBoolean(refreshKey(), false);
     }
 
+    /**
+     * Get the value of the newest first preference
+     *
+     * @return true if a full sync parses recent email first and the rest in the background
+     */
+    public boolean getNewestFirst() {
+        return preferences.getBoolean(newestFirstKey(), true);
+    }
+
+    /**
+     * Get the value of the push updates preference
+     *
+     * @return true if new emails should be listened for in the background
+     */
+    public boolean getPushUpdates() {
+        return preferences.getBoolean(pushKey(), false);
+    }
+
     /**
      * @return Date formatter for displaying a date on the UI
      */
@@ -190,6 +208,13 @@ public class PreferencesHelper {
         return context.getString(R.string.mdyFormat);
     }
 
+    /**
+     * @return The key for saving newest first preference
+     */
+    public String newestFirstKey() {
+        return context.getString(R.string.newestFirstKey);
+    }
+
     /**
      * @return default key when something is uninitialized
      */
@@ -237,6 +262,13 @@ public class PreferencesHelper {
         }
     }
 
+    /**
+     * @return The key for saving push updates preference
+     */
+    public String pushKey() {
+        return context.getString(R.string.pushKey);
+    }
+
     /**
      * @return The key for saving manual refresh preference
      */
@@ -69,6 +69,7 @@ public class SendPortalData extends AsyncTask<Void, Void, Void> {
         DatabaseInterface db = new DatabaseInterface(context);
         PreferencesHelper helper = new PreferencesHelper(context);
         Vector<PortalSubmission> portalList = db.getAllPortals(helper.isSeerOnly());
+        db.close();
         SimpleDateFormat sdf = new SimpleDateFormat("MM-dd-yyyy", Locale.getDefault());
         for (PortalSubmission ps : portalList) {
             JSONObject newJSON = new JSONObject();
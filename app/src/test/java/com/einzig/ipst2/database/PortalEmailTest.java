@@ -0,0 +1,212 @@
+/******************************************************************************
+ * Copyright 2017 Steven Foskett, Jimmy Ho, Ryan Porterfield                  *
+ * Permission is hereby granted, free of charge, to any person obtaining a    *
+ * copy of this software and associated documentation files (the "Software"), *
+ * to deal in the Software without restriction, including without limitation  *
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,   *
+ * and/or sell copies of the Software, and to permit persons to whom the      *
+ * Software is furnished to do so, subject to the following conditions:       *
+ *                                                                            *
+ * The above copyright notice and this permission notice shall be included in *
+ * all copies or substantial portions of the Software.                        *
+ *                                                                            *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR *
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,   *
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE*
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER     *
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING    *
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER        *
+ * DEALINGS IN THE SOFTWARE.                                                  *
+ ******************************************************************************/
+
+package com.einzig.ipst2.database;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_ACCEPTED;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_PENDING;
+import static com.einzig.ipst2.database.PortalContract.PortalEntry.STATUS_REJECTED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link PortalEmail}, {@link KeywordAutomaton} and the bundled {@link EmailRules} with
+ * the regular expressions and contains checks they replaced, on random emails built from pieces
+ * of tags, links and keywords.
+ */
+public class PortalEmailTest {
+    /** Number of random emails compared by each test */
+    static final private int ITERATIONS = 20000;
+    /** Regular expression the live address was parsed with */
+    static final private Pattern LIVE_ADDRESS = Pattern.compile("<a[^>]*>(.*?)</a>",
+            Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+    /** Regular expression the intel link was parsed with */
+    static final private Pattern INTEL_LINK = Pattern.compile("href=\"(.*?)\"");
+    /** Regular expression the picture URL was parsed with */
+    static final private Pattern PICTURE_URL = Pattern.compile(
+            "<img[^>]+src\\s*=\\s*['\"]([^'\"]+)['\"][^>]*>",
+            Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+    /** Pieces random email bodies are built from */
+    static final private String[] BODY_PIECES = {
+            "<img", "<IMG", "<iMg ", " src", "SRC", "src=", " = ", "\"", "'", ">", "<", "/>",
+            "<a", "<A ", "<a href=\"", "href=\"", "HREF=\"", "</a>", "</A>", "</a", "h", "hr",
+            "http://x/", "\n", "\r\n", "\u0085", "\u2028", "\t", " ", "x", "\u0130", "\u212a",
+            "duplicate", "Duplicate", "too close", "does not meet the criteria", "not to accept",
+            "accepted", "ACCEPTED", "not able to bring it online", "dup", "too"
+    };
+    /** Pieces random email subjects are built from */
+    static final private String[] SUBJECT_PIECES = {
+            "submitted", "submission", "portal live", " *success!*", "*success!*", "rejected",
+            "duplicate", "portal", " ", "sub", "live", "ingress", "x"
+    };
+
+    /** Rules bundled with the app */
+    private EmailRules rules;
+
+    @Before
+    public void loadRules() throws IOException {
+        // Unit tests run from the module directory
+        BufferedReader reader = new BufferedReader(
+                new FileReader("src/main/res/raw/email_rules.txt"));
+        try {
+            rules = new EmailRules(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Build a random string from pieces
+     *
+     * @param random Source of randomness
+     * @param pieces Pieces the string is built from
+     * @param max    Most pieces in the string
+     * @return the string
+     */
+    static private String randomText(Random random, String[] pieces, int max) {
+        StringBuilder builder = new StringBuilder();
+        int count = random.nextInt(max + 1);
+        for (int i = 0; i < count; ++i)
+            builder.append(pieces[random.nextInt(pieces.length)]);
+        return builder.toString();
+    }
+
+    /**
+     * @param pattern Regular expression the part was parsed with
+     * @param message Email body
+     * @return first group of the first match, or null if there isn't one
+     */
+    static private String find(Pattern pattern, String message) {
+        Matcher matcher = pattern.matcher(message);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * @param message Email body
+     * @return status the body was classified as before the rule table
+     */
+    static private int oldBodyStatus(String message) {
+        if (message.contains("not to accept") || message.contains("duplicate")
+                || message.contains("not able to bring it online"))
+            return STATUS_REJECTED;
+        if (message.contains("accepted"))
+            return STATUS_ACCEPTED;
+        return EmailRules.STATUS_UNKNOWN;
+    }
+
+    /**
+     * @param message Email body
+     * @return rejection reason the body gave before the rule table
+     */
+    static private String oldRejectionReason(String message) {
+        String rejectionReason = "N/A";
+        if (message.contains("does not meet the criteria"))
+            rejectionReason = "Does not meet portal criteria";
+        if (message.contains("duplicate"))
+            rejectionReason = "Duplicate of another portal";
+        if (message.contains("too close")) {
+            if (rejectionReason.equalsIgnoreCase("N/A"))
+                rejectionReason = "Too Close to another portal";
+            else
+                rejectionReason = rejectionReason + " or too close to another portal";
+        }
+        return rejectionReason;
+    }
+
+    /**
+     * @param subject Email subject in lower case
+     * @return status the subject was classified as before the rule table
+     */
+    static private int oldSubjectStatus(String subject) {
+        if (subject.contains("submitted") || subject.contains("submission"))
+            return STATUS_PENDING;
+        else if (subject.contains("portal live") || subject.contains(" *success!*"))
+            return STATUS_ACCEPTED;
+        else if (subject.contains("rejected") || subject.contains("duplicate"))
+            return STATUS_REJECTED;
+        return EmailRules.STATUS_UNKNOWN;
+    }
+
+    @Test
+    public void parse_matchesRegularExpressions() {
+        Random random = new Random(16);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            String message = randomText(random, BODY_PIECES, 30);
+            PortalEmail email = PortalEmail.parse(message, rules);
+            String picture = find(PICTURE_URL, message);
+            String link = find(INTEL_LINK, message);
+            String address = find(LIVE_ADDRESS, message);
+            assertEquals(message, picture == null ? "name" : picture,
+                    email.getPictureURL("name"));
+            assertEquals(message, link == null ? "N/A" : link, email.getIntelLink());
+            assertEquals(message, address == null ? "N/A" : address, email.getLiveAddress());
+            assertEquals(message, oldBodyStatus(message), email.getStatus());
+            assertEquals(message, oldRejectionReason(message), email.getRejectionReason());
+        }
+    }
+
+    @Test
+    public void parse_nullBody() {
+        PortalEmail email = PortalEmail.parse(null, rules);
+        assertEquals("", email.getPictureURL("name"));
+        assertEquals("N/A", email.getIntelLink());
+        assertEquals("N/A", email.getLiveAddress());
+        assertEquals("N/A", email.getRejectionReason());
+        assertEquals(EmailRules.STATUS_UNKNOWN, email.getStatus());
+    }
+
+    @Test
+    public void classifySubject_matchesContainsChecks() {
+        Random random = new Random(17);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            String subject = randomText(random, SUBJECT_PIECES, 6);
+            assertEquals(subject, oldSubjectStatus(subject), rules.classifySubject(subject));
+        }
+    }
+
+    @Test
+    public void keywordAutomaton_matchesContains() {
+        List<String> phrases = Arrays.asList("he", "she", "his", "hers", "h", "\u00e9t\u00e9",
+                "ss", "sss");
+        KeywordAutomaton automaton = new KeywordAutomaton(phrases);
+        String[] pieces = {"h", "e", "s", "i", "r", "x", "\u00e9", "t", " "};
+        Random random = new Random(18);
+        for (int i = 0; i < ITERATIONS; ++i) {
+            String text = randomText(random, pieces, 20);
+            boolean[] expected = new boolean[phrases.size()];
+            for (int j = 0; j < expected.length; ++j)
+                expected[j] = text.contains(phrases.get(j));
+            assertArrayEquals(text, expected, automaton.scan(text));
+        }
+    }
+}